@@ -0,0 +1,165 @@
+package com.example.sunshineweatherapp;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
+import com.example.sunshineweatherapp.utilities.SunshineWeatherUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that {@link ForecastRowModel} rows show what ForecastAdapter used to work out on every
+ * bind, and logs under {@link #TAG} what one bind's worth of that work cost on the main thread
+ * next to the cost of building the rows once, off it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ForecastRowModelTest {
+
+    private static final String TAG = ForecastRowModelTest.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int ROUNDS = 200;
+
+    private Context mContext;
+    private MatrixCursor mCursor;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mCursor = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        int[] weatherIds = {200, 500, 800, 801, 600, 741, 900};
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            mCursor.addRow(new Object[]{
+                    today + day * SunshineDateUtils.DAY_IN_MILLIS,
+                    20.0 + day % 5,
+                    10.0 + day % 3,
+                    weatherIds[day % weatherIds.length]});
+        }
+    }
+
+    @Test
+    public void rows_matchWhatTheAdapterUsedToFormat() {
+        List<ForecastRowModel> rows = ForecastRowModel.buildRows(mContext, mCursor);
+        assertEquals(FORECAST_DAYS, rows.size());
+
+        for (int position = 0; position < FORECAST_DAYS; position++) {
+            mCursor.moveToPosition(position);
+            ForecastRowModel row = rows.get(position);
+            int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+
+            assertEquals(mCursor.getLong(MainActivity.INDEX_WEATHER_DATE), row.date);
+            assertEquals(SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId),
+                    row.smallArtResId);
+            assertEquals(SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                    row.largeArtResId);
+            assertEquals(SunshineDateUtils.getFriendlyDateString(mContext, row.date, false),
+                    row.dateText);
+
+            String description =
+                    SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+            assertEquals(description, row.description);
+            assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                    row.descriptionA11y);
+
+            String high = SunshineWeatherUtils.formatTemperature(mContext,
+                    mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP));
+            assertEquals(high, row.highText);
+            assertEquals(mContext.getString(R.string.a11y_high_temp, high), row.highA11y);
+
+            String low = SunshineWeatherUtils.formatTemperature(mContext,
+                    mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP));
+            assertEquals(low, row.lowText);
+            assertEquals(mContext.getString(R.string.a11y_low_temp, low), row.lowA11y);
+        }
+    }
+
+    @Test
+    public void rows_areEqualOnlyWhileTheyLookTheSame() {
+        List<ForecastRowModel> rows = ForecastRowModel.buildRows(mContext, mCursor);
+        List<ForecastRowModel> reloaded = ForecastRowModel.buildRows(mContext, mCursor);
+        assertEquals(rows, reloaded);
+
+        /*
+         * A forecast that starts a day later: the days it shares are the same rows, even the new
+         * first one, whose larger art the adapter picks when it binds it
+         */
+        MatrixCursor shifted = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        for (int position = 1; position < FORECAST_DAYS; position++) {
+            mCursor.moveToPosition(position);
+            shifted.addRow(new Object[]{
+                    mCursor.getLong(MainActivity.INDEX_WEATHER_DATE),
+                    mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP),
+                    mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP),
+                    mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID)});
+        }
+        List<ForecastRowModel> shiftedRows = ForecastRowModel.buildRows(mContext, shifted);
+        assertEquals(rows.get(1), shiftedRows.get(0));
+        assertEquals(rows.get(2), shiftedRows.get(1));
+
+        /* Another temperature for the same day is a different row */
+        MatrixCursor warmer = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        mCursor.moveToPosition(0);
+        warmer.addRow(new Object[]{
+                mCursor.getLong(MainActivity.INDEX_WEATHER_DATE),
+                mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP) + 5,
+                mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP),
+                mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID)});
+        assertNotEquals(rows.get(0), ForecastRowModel.buildRows(mContext, warmer).get(0));
+    }
+
+    @Test
+    public void logFormattingCost() {
+        long formatEveryBind = 0;
+        long buildOnce = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int position = 0; position < FORECAST_DAYS; position++) {
+                formatLikeTheOldBind(position);
+            }
+            formatEveryBind += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ForecastRowModel.buildRows(mContext, mCursor);
+            buildOnce += System.nanoTime() - start;
+        }
+        Log.i(TAG, "Formatting " + FORECAST_DAYS + " rows at bind time took "
+                + TimeUnit.NANOSECONDS.toMicros(formatEveryBind / ROUNDS)
+                + " us of main thread per pass over the list; building the rows took "
+                + TimeUnit.NANOSECONDS.toMicros(buildOnce / ROUNDS)
+                + " us once per load, on the loader thread, leaving bind with field assignments");
+    }
+
+    /*
+     * The work onBindViewHolder did for one row before the rows were built ahead of time
+     */
+    private void formatLikeTheOldBind(int position) {
+        mCursor.moveToPosition(position);
+        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+        SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+        SunshineDateUtils.getFriendlyDateString(mContext,
+                mCursor.getLong(MainActivity.INDEX_WEATHER_DATE), false);
+        String description =
+                SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+        mContext.getString(R.string.a11y_forecast, description);
+        String high = SunshineWeatherUtils.formatTemperature(mContext,
+                mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP));
+        mContext.getString(R.string.a11y_high_temp, high);
+        String low = SunshineWeatherUtils.formatTemperature(mContext,
+                mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP));
+        mContext.getString(R.string.a11y_low_temp, low);
+    }
+}
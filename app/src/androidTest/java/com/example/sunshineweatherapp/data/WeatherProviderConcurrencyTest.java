@@ -0,0 +1,179 @@
+package com.example.sunshineweatherapp.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test for reading the weather database while a sync writes to it. One thread merges
+ * changing forecasts in a loop, the way back to back syncs would, while several threads query
+ * the forecast list. Reader latencies are logged under {@link #TAG}; run it once with and once
+ * without write-ahead logging to compare how long readers wait behind the writer.
+ * <p>
+ * It works on its own location so the user's forecast is left untouched.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherProviderConcurrencyTest {
+
+    private static final String TAG = WeatherProviderConcurrencyTest.class.getSimpleName();
+
+    private static final String LOCATION_SETTING = "concurrency test location";
+
+    private static final int READER_THREADS = 4;
+    private static final int WRITES = 50;
+    private static final int FORECAST_DAYS = 14;
+
+    private Context mContext;
+    private ContentResolver mResolver;
+    private Uri mLocationUri;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mResolver = mContext.getContentResolver();
+        mLocationUri = WeatherContract.WeatherEntry.buildWeatherUriWithLocation(LOCATION_SETTING);
+        mResolver.delete(mLocationUri, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.delete(mLocationUri, null, null);
+    }
+
+    @Test
+    public void databaseUsesWriteAheadLog() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA journal_mode", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("wal", cursor.getString(0).toLowerCase());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void readersKeepGoingWhileSyncWrites() throws InterruptedException {
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch readersDone = new CountDownLatch(READER_THREADS);
+        final long[][] latencies = new long[READER_THREADS][];
+        final int[] reads = new int[READER_THREADS];
+
+        mResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_MERGE_FORECAST_BATCH, LOCATION_SETTING,
+                buildForecast(0).toBundle());
+
+        for (int t = 0; t < READER_THREADS; t++) {
+            final int reader = t;
+            latencies[reader] = new long[1024];
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (writing.get()) {
+                            /*
+                             * A different argument every time, so each read misses the
+                             * provider's query cache and really goes to SQLite.
+                             */
+                            long start = System.nanoTime();
+                            Cursor cursor = mResolver.query(mLocationUri, null,
+                                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                                    new String[]{Long.toString(-reads[reader])},
+                                    null);
+                            if (cursor != null) {
+                                cursor.getCount();
+                                cursor.close();
+                            }
+                            long elapsed = System.nanoTime() - start;
+
+                            if (reads[reader] == latencies[reader].length) {
+                                latencies[reader] = Arrays.copyOf(latencies[reader],
+                                        reads[reader] * 2);
+                            }
+                            latencies[reader][reads[reader]++] = elapsed;
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        readersDone.countDown();
+                    }
+                }
+            }, "weather-reader-" + reader).start();
+        }
+
+        long writeStart = System.nanoTime();
+        try {
+            for (int i = 1; i <= WRITES; i++) {
+                mResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                        WeatherContract.METHOD_MERGE_FORECAST_BATCH, LOCATION_SETTING,
+                        buildForecast(i).toBundle());
+            }
+        } finally {
+            writing.set(false);
+        }
+        long writeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writeStart);
+
+        assertTrue("Readers did not finish",
+                readersDone.await(30, TimeUnit.SECONDS));
+        assertNull("A reader failed: " + failure.get(), failure.get());
+
+        int total = 0;
+        for (int count : reads) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (int t = 0; t < READER_THREADS; t++) {
+            System.arraycopy(latencies[t], 0, all, offset, reads[t]);
+            offset += reads[t];
+        }
+        Arrays.sort(all);
+        assertTrue("No reads were made", total > 0);
+
+        Log.i(TAG, WRITES + " merges in " + writeMillis + " ms alongside " + total + " reads;"
+                + " reader latency p50 " + micros(all[total / 2]) + " us,"
+                + " p99 " + micros(all[Math.min(total - 1, total * 99 / 100)]) + " us,"
+                + " max " + micros(all[total - 1]) + " us");
+    }
+
+    /*
+     * A two week forecast whose values depend on the revision, so every merge updates every row
+     */
+    private static ForecastBatch buildForecast(int revision) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ForecastBatch batch = new ForecastBatch(FORECAST_DAYS);
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            batch.add(today + day * SunshineDateUtils.DAY_IN_MILLIS, 800,
+                    10 + revision % 7, 20 + revision % 5, 50, 1010, 4, 180);
+        }
+        return batch;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
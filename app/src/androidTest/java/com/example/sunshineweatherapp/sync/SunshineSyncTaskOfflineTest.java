@@ -0,0 +1,130 @@
+package com.example.sunshineweatherapp.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.example.sunshineweatherapp.data.SunshinePreferences;
+import com.example.sunshineweatherapp.data.WeatherContract;
+import com.example.sunshineweatherapp.utilities.HttpUrlConnectionTransport;
+import com.example.sunshineweatherapp.utilities.NetworkUtils;
+import com.example.sunshineweatherapp.utilities.StubWeatherTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the whole sync, fetch to parse to store, against {@link StubWeatherTransport}, so it
+ * needs no network, and logs how long a sync takes. Like a real sync, it writes the forecast
+ * of the preferred location, and its record of when that location was last synced.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SunshineSyncTaskOfflineTest {
+
+    private static final String TAG = SunshineSyncTaskOfflineTest.class.getSimpleName();
+
+    private static final int FORECAST_DAYS = 14;
+    private static final int SYNCS = 20;
+
+    private Context mContext;
+    private StubWeatherTransport mTransport;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mTransport = new StubWeatherTransport(buildForecastJson().getBytes(), "\"offline-1\"");
+        NetworkUtils.setTransport(mTransport);
+        forgetLastSync();
+    }
+
+    @After
+    public void tearDown() {
+        NetworkUtils.setTransport(new HttpUrlConnectionTransport());
+    }
+
+    @Test
+    public void sync_storesStubForecastAndThenSkipsFreshOnes() {
+        long avoidedBefore = SunshineSyncTask.getFetchesAvoided();
+        long start = System.nanoTime();
+        for (int i = 0; i < SYNCS; i++) {
+            SunshineSyncTask.syncWeather(mContext);
+        }
+        long averageMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / SYNCS;
+        Log.i(TAG, SYNCS + " syncs, " + averageMicros + " us each on average, "
+                + mTransport.getRequestCount() + " of them fetched");
+
+        /* Only the first sync needed the network, the others found its forecast fresh */
+        assertEquals(1, mTransport.getRequestCount());
+        assertEquals(SYNCS - 1, SunshineSyncTask.getFetchesAvoided() - avoidedBefore);
+        assertStoredDays(FORECAST_DAYS);
+    }
+
+    @Test
+    public void staleSync_revalidatesWithoutDownloadingUnchangedForecast() {
+        long start = System.nanoTime();
+        for (int i = 0; i < SYNCS; i++) {
+            forgetLastSync();
+            SunshineSyncTask.syncWeather(mContext);
+        }
+        long averageMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / SYNCS;
+        Log.i(TAG, SYNCS + " stale syncs, " + averageMicros + " us each on average, "
+                + mTransport.getNotModifiedCount() + " of them not modified");
+
+        assertEquals(SYNCS, mTransport.getRequestCount());
+        assertTrue(mTransport.getNotModifiedCount() >= SYNCS - 1);
+        assertStoredDays(FORECAST_DAYS);
+    }
+
+    /*
+     * Makes the stored forecast of the preferred location look never synced, so the next sync
+     * goes to the network
+     */
+    private void forgetLastSync() {
+        Bundle syncState = new Bundle();
+        syncState.putLong(WeatherContract.EXTRA_LAST_SYNC, 0);
+        mContext.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_RECORD_SYNC, null, syncState);
+    }
+
+    private void assertStoredDays(int days) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithLocation(
+                        SunshinePreferences.getPreferredWeatherLocation(mContext)),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(days, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String buildForecastJson() {
+        StringBuilder json = new StringBuilder("{\"city\":{\"name\":\"Mountain View\","
+                + "\"coord\":{\"lon\":-122.0838,\"lat\":37.3861}},\"cod\":\"200\",\"list\":[");
+        for (int day = 0; day < FORECAST_DAYS; day++) {
+            if (day > 0) {
+                json.append(',');
+            }
+            json.append("{\"temp\":{\"min\":").append(10 + day % 3)
+                    .append(",\"max\":").append(24 + day % 4)
+                    .append("},\"pressure\":1013,\"humidity\":").append(60 + day)
+                    .append(",\"weather\":[{\"id\":800}],\"speed\":3,\"deg\":")
+                    .append(day * 20).append('}');
+        }
+        return json.append("]}").toString();
+    }
+}
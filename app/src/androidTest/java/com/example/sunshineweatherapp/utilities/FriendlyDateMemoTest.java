@@ -0,0 +1,63 @@
+package com.example.sunshineweatherapp.utilities;
+
+import android.content.Context;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that {@link SunshineDateUtils#getFriendlyDateString} hands back the very same String
+ * for a remembered date, that it matches formatting the date afresh, and that the memo starts
+ * over once it is invalidated.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FriendlyDateMemoTest {
+
+    private Context mContext;
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mToday = SunshineDateUtils.getNormalizedUtcDateForToday();
+        FriendlyDateMemo.invalidate();
+    }
+
+    @Test
+    public void forecastDays_matchFreshFormatting() {
+        for (int day = 0; day < 14; day++) {
+            long date = mToday + day * SunshineDateUtils.DAY_IN_MILLIS;
+            assertEquals(SunshineDateUtils.formatFriendlyDateString(mContext, date, false),
+                    SunshineDateUtils.getFriendlyDateString(mContext, date, false));
+            assertEquals(SunshineDateUtils.formatFriendlyDateString(mContext, date, true),
+                    SunshineDateUtils.getFriendlyDateString(mContext, date, true));
+        }
+    }
+
+    @Test
+    public void rememberedDate_isReturnedWithoutFormattingAgain() {
+        long tomorrow = mToday + SunshineDateUtils.DAY_IN_MILLIS;
+        String first = SunshineDateUtils.getFriendlyDateString(mContext, tomorrow, false);
+        assertSame(first, SunshineDateUtils.getFriendlyDateString(mContext, tomorrow, false));
+
+        FriendlyDateMemo.invalidate();
+        String afterInvalidation = SunshineDateUtils.getFriendlyDateString(mContext, tomorrow, false);
+        assertNotSame(first, afterInvalidation);
+        assertEquals(first, afterInvalidation);
+    }
+
+    @Test
+    public void datesFarAhead_areStillFormatted() {
+        long nextYear = mToday + 365 * SunshineDateUtils.DAY_IN_MILLIS;
+        assertEquals(SunshineDateUtils.formatFriendlyDateString(mContext, nextYear, false),
+                SunshineDateUtils.getFriendlyDateString(mContext, nextYear, false));
+    }
+}
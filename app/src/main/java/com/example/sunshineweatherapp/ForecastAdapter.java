@@ -1,7 +1,6 @@
 package com.example.sunshineweatherapp;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,10 +8,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.os.TraceCompat;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
-import com.example.sunshineweatherapp.utilities.SunshineWeatherUtils;
+import java.util.List;
 
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -36,7 +40,27 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     //  COMPLETED (7) Declare a private boolean called mUseTodayLayout
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    /*
+     * Rows are matched up by date, and a row is only rebound when something it shows changed
+     */
+    private static final DiffUtil.ItemCallback<ForecastRowModel> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ForecastRowModel>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull ForecastRowModel oldRow,
+                                               @NonNull ForecastRowModel newRow) {
+                    return oldRow.date == newRow.date;
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull ForecastRowModel oldRow,
+                                                  @NonNull ForecastRowModel newRow) {
+                    return oldRow.equals(newRow);
+                }
+            };
+
+    /* Holds the rows shown, and diffs each new list against them on a background thread */
+    private final AsyncListDiffer<ForecastRowModel> mDiffer = new AsyncListDiffer<>(
+            new FirstRowUpdateCallback(), new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).build());
 
     public ForecastAdapter(@NonNull Context context, ForecastAdapterOnClickHandler clickHandler){
         mContext = context;
@@ -73,10 +97,10 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         public void onClick(View v){
             int adapterPosition = getAdapterPosition();
 
-//            Passes the date from the cursor for the clicked item
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-            mClickHandler.onClick(dateInMillis);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+
+//            Passes the date of the clicked item
+            mClickHandler.onClick(mDiffer.getCurrentList().get(adapterPosition).date);
         }
     }
     @NonNull
@@ -114,11 +138,14 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
     @Override
     public void onBindViewHolder(@NonNull ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        TraceCompat.beginSection("ForecastAdapter.bind");
 
-//        Moves the cursor to the appropriate position
-        mCursor.moveToPosition(position);
+        /*
+         * Everything the row shows, including the accessibility (a11y) descriptions and both
+         * sizes of icon, was worked out when the forecast was loaded.
+         */
+        ForecastRowModel row = mDiffer.getCurrentList().get(position);
 
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
         int weatherImageId;
 
         int viewType = getItemViewType(position);
@@ -126,14 +153,12 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         switch (viewType) {
 //          COMPLETED (15) If the view type of the layout is today, display a large icon
             case VIEW_TYPE_TODAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getLargeArtResourceIdForWeatherCondition(weatherId);
+                weatherImageId = row.largeArtResId;
                 break;
 
 //          COMPLETED (16) If the view type of the layout is today, display a small icon
             case VIEW_TYPE_FUTURE_DAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getSmallArtResourceIdForWeatherCondition(weatherId);
+                weatherImageId = row.smallArtResId;
                 break;
 
 //          COMPLETED (17) Otherwise, throw an IllegalArgumentException
@@ -142,79 +167,93 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         }
         forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
 
-        /****************
-         * Weather Date *
-         ****************/
-        /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-        /* Get human readable string using our utility method */
-        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
-
         /* Display friendly date string */
-        forecastAdapterViewHolder.dateView.setText(dateString);
-
-        /***********************
-         * Weather Description *
-         ***********************/
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
-        /* Create the accessibility (a11y) String from the weather description */
-        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
+        forecastAdapterViewHolder.dateView.setText(row.dateText);
 
         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.descriptionView.setText(description);
-        forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
-
-        /**************************
-         * High (max) temperature *
-         **************************/
-        /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-        /*
-         * If the user's preference for weather is fahrenheit, formatTemperature will convert
-         * the temperature. This method will also append either °C or °F to the temperature
-         * String.
-         */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
-        /* Create the accessibility (a11y) String from the weather description */
-        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
+        forecastAdapterViewHolder.descriptionView.setText(row.description);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(row.descriptionA11y);
 
-        /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.highTempView.setText(highString);
-        forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
-
-        /*************************
-         * Low (min) temperature *
-         *************************/
-        /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-        /*
-         * If the user's preference for weather is fahrenheit, formatTemperature will convert
-         * the temperature. This method will also append either °C or °F to the temperature
-         * String.
-         */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
-        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
+        forecastAdapterViewHolder.highTempView.setText(row.highText);
+        forecastAdapterViewHolder.highTempView.setContentDescription(row.highA11y);
 
-        /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.lowTempView.setText(lowString);
-        forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
+        forecastAdapterViewHolder.lowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(row.lowA11y);
 
+        TraceCompat.endSection();
     }
 
     @Override
     public int getItemCount() {
-//        returns 0 if the cursor is null. Otherwise, returns the count of mCursor
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
-           }
-
-//           New method that allows Cursor swap.
-           void swapCursor(Cursor newCursor){
-                mCursor = newCursor;
-//                calls notifyDataSetChanged after the new Cursor is set
-                notifyDataSetChanged();
-           }
+        return mDiffer.getCurrentList().size();
+    }
+
+//    Replaces the rows shown, with ones built by ForecastLoader
+    void swapRows(List<ForecastRowModel> newRows) {
+        /*
+         * Rather than rebinding every row with notifyDataSetChanged, the differ works out which
+         * days were added, removed or changed off the main thread, then notifies just those.
+         */
+        mDiffer.submitList(newRows);
+    }
+
+
+    /*
+     * Passes the differ's updates on to the adapter. A row's icon depends on whether it is
+     * first, which the diff cannot see: when a day is added, removed or moved at the top, the
+     * row that ends up first is rebound so that it shows the today layout's art, and so is the
+     * one that was first before.
+     */
+    private class FirstRowUpdateCallback implements ListUpdateCallback {
 
+        private final ListUpdateCallback mAdapterCallback =
+                new AdapterListUpdateCallback(ForecastAdapter.this);
+
+        @Override
+        public void onInserted(int position, int count) {
+            mAdapterCallback.onInserted(position, count);
+            if (position == 0) {
+                rebindFirstRows(count);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mAdapterCallback.onRemoved(position, count);
+            if (position == 0) {
+                rebindFirstRows(RecyclerView.NO_POSITION);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mAdapterCallback.onMoved(fromPosition, toPosition);
+            if (fromPosition == 0) {
+                rebindFirstRows(toPosition);
+            } else if (toPosition == 0) {
+                rebindFirstRows(1);
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mAdapterCallback.onChanged(position, count, payload);
+        }
+
+        /*
+         * Rebinds the row that is now first, and the one that was first before if it is still
+         * in the list, when there is a today layout that sets the first row apart
+         */
+        private void rebindFirstRows(int previousFirstPosition) {
+            if (!mUseTodayLayout || mDiffer.getCurrentList().isEmpty()) {
+                return;
+            }
+            mAdapterCallback.onChanged(0, 1, null);
+            if (previousFirstPosition > 0) {
+                mAdapterCallback.onChanged(previousFirstPosition, 1, null);
+            }
+        }
+    }
 
     //  COMPLETED (9) Override getItemViewType
     @Override
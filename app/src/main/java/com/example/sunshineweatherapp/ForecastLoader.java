@@ -0,0 +1,153 @@
+package com.example.sunshineweatherapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.CursorLoader;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+
+import androidx.core.os.TraceCompat;
+
+import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A CursorLoader for the forecast list that also turns the forecast into
+ * {@link ForecastRowModel}s on its background thread, so the list never formats a row while
+ * it scrolls. Everything else, such as reloading when the forecast changes or closing old
+ * cursors, is left to CursorLoader.
+ * <p>
+ * The rows hold text for one locale and one day ("Today", "Tomorrow"), and the loader keeps
+ * them across configuration changes. So it also loads again when the locale, time zone or
+ * date change, and when it is started again on a different day or locale than its rows were
+ * built for.
+ */
+class ForecastLoader extends CursorLoader {
+
+    private BroadcastReceiver mDateOrLocaleReceiver;
+
+    /* The rows last delivered, or null */
+    private ForecastCursor mDelivered;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                   String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+
+        TraceCompat.beginSection("ForecastLoader.buildRows");
+        try {
+            /* Taken first, so that rows built across midnight are reloaded too */
+            long normalizedToday = SunshineDateUtils.getNormalizedUtcDateForToday();
+            long utcDay = System.currentTimeMillis() / SunshineDateUtils.DAY_IN_MILLIS;
+            Locale locale = Locale.getDefault();
+            return new ForecastCursor(cursor, ForecastRowModel.buildRows(getContext(), cursor),
+                    normalizedToday, utcDay, locale);
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (!isReset()) {
+            mDelivered = cursor instanceof ForecastCursor ? (ForecastCursor) cursor : null;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mDateOrLocaleReceiver == null) {
+            mDateOrLocaleReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    /* The memo may not have heard of the change yet; the rows must not reuse it */
+                    SunshineDateUtils.forgetFriendlyDates();
+                    onContentChanged();
+                }
+            };
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            getContext().registerReceiver(mDateOrLocaleReceiver, filter);
+        }
+
+        /* Broadcasts can arrive late, or while the loader was stopped and missed them */
+        if (mDelivered != null && mDelivered.isOutdated()) {
+            onContentChanged();
+        }
+        super.onStartLoading();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        if (mDateOrLocaleReceiver != null) {
+            getContext().unregisterReceiver(mDateOrLocaleReceiver);
+            mDateOrLocaleReceiver = null;
+        }
+        mDelivered = null;
+    }
+
+    /**
+     * @return The rows built for a cursor this loader delivered, or an empty list for any other
+     * cursor, including null
+     */
+    static List<ForecastRowModel> getRows(Cursor cursor) {
+        if (cursor instanceof ForecastCursor) {
+            return ((ForecastCursor) cursor).mRows;
+        }
+        return Collections.emptyList();
+    }
+
+    /*
+     * The loaded cursor with its rows attached. Keeping it a Cursor lets CursorLoader watch it
+     * for changes and close it when it is replaced, as it would any other.
+     */
+    private static final class ForecastCursor extends CursorWrapper {
+
+        private final List<ForecastRowModel> mRows;
+
+        /* What the rows' text was worked out for */
+        private final long mNormalizedToday;
+        private final long mUtcDay;
+        private final Locale mLocale;
+
+        ForecastCursor(Cursor cursor, List<ForecastRowModel> rows,
+                       long normalizedToday, long utcDay, Locale locale) {
+            super(cursor);
+            mRows = rows;
+            mNormalizedToday = normalizedToday;
+            mUtcDay = utcDay;
+            mLocale = locale;
+        }
+
+        /*
+         * True once it is another day, locally or in UTC, which the friendly dates go by, or
+         * the locale changed
+         */
+        boolean isOutdated() {
+            return mNormalizedToday != SunshineDateUtils.getNormalizedUtcDateForToday()
+                    || mUtcDay != System.currentTimeMillis() / SunshineDateUtils.DAY_IN_MILLIS
+                    || !mLocale.equals(Locale.getDefault());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.sunshineweatherapp;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.sunshineweatherapp.data.SunshinePreferences;
+import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
+import com.example.sunshineweatherapp.utilities.SunshineWeatherUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One row of the forecast list, ready to display: every String, content description and icon
+ * the row shows, worked out once when the forecast is loaded. Binding a row then only hands
+ * these to its views, so scrolling does no formatting, resource lookups or preference reads.
+ * <p>
+ * Both the small and the large art are kept, since which one a row shows depends on its
+ * position and the layout of the moment, which the adapter decides when it binds the row.
+ */
+final class ForecastRowModel {
+
+    /* The date of the row in UTC milliseconds, handed to DetailActivity when it is clicked */
+    final long date;
+
+    final int smallArtResId;
+    final int largeArtResId;
+
+    final String dateText;
+
+    final String description;
+    final String descriptionA11y;
+
+    final String highText;
+    final String highA11y;
+
+    final String lowText;
+    final String lowA11y;
+
+    private ForecastRowModel(long date, int smallArtResId, int largeArtResId, String dateText,
+                             String description, String descriptionA11y,
+                             String highText, String highA11y,
+                             String lowText, String lowA11y) {
+        this.date = date;
+        this.smallArtResId = smallArtResId;
+        this.largeArtResId = largeArtResId;
+        this.dateText = dateText;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+    }
+
+    /*
+     * Two rows are equal when they would look the same on screen, which is what the list's diff
+     * uses to leave rows that did not change alone
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ForecastRowModel)) return false;
+        ForecastRowModel other = (ForecastRowModel) o;
+        return date == other.date
+                && smallArtResId == other.smallArtResId
+                && largeArtResId == other.largeArtResId
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && descriptionA11y.equals(other.descriptionA11y)
+                && highText.equals(other.highText)
+                && highA11y.equals(other.highA11y)
+                && lowText.equals(other.lowText)
+                && lowA11y.equals(other.lowA11y);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (date ^ (date >>> 32));
+        result = 31 * result + smallArtResId;
+        result = 31 * result + dateText.hashCode();
+        result = 31 * result + description.hashCode();
+        result = 31 * result + highText.hashCode();
+        result = 31 * result + lowText.hashCode();
+        return result;
+    }
+
+    /**
+     * Builds a row for every forecast in the cursor, which must have the columns of
+     * {@link MainActivity#MAIN_FORECAST_PROJECTION}. This is meant to run off the main thread,
+     * where the forecast is loaded.
+     *
+     * @param context Used for resources and the units preference
+     * @param cursor  The forecast, moved through but not closed
+     * @return The rows in cursor order, as a list that cannot be modified
+     */
+    static List<ForecastRowModel> buildRows(Context context, Cursor cursor) {
+        /* Read once for the whole list, not twice for every row */
+        boolean isMetric = SunshinePreferences.isMetric(context);
+
+        List<ForecastRowModel> rows = new ArrayList<>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            int weatherId = cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+            int smallArtResId =
+                    SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+            int largeArtResId =
+                    SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+
+            long date = cursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            String dateText = SunshineDateUtils.getFriendlyDateString(context, date, false);
+
+            String description =
+                    SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+
+            String highText = SunshineWeatherUtils.formatTemperature(context,
+                    cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP), isMetric);
+            String lowText = SunshineWeatherUtils.formatTemperature(context,
+                    cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP), isMetric);
+
+            rows.add(new ForecastRowModel(date, smallArtResId, largeArtResId, dateText,
+                    description, context.getString(R.string.a11y_forecast, description),
+                    highText, context.getString(R.string.a11y_high_temp, highText),
+                    lowText, context.getString(R.string.a11y_low_temp, lowText)));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+}
@@ -1,7 +1,6 @@
 package com.example.sunshineweatherapp;
 
 import android.app.LoaderManager;
-import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
@@ -185,7 +184,8 @@ public class MainActivity extends AppCompatActivity implements
 
                 String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
 
-        return new CursorLoader(this,forecastQueryUri,
+//        ForecastLoader also formats the rows, so the list does not have to while it scrolls
+        return new ForecastLoader(this,forecastQueryUri,
                 MAIN_FORECAST_PROJECTION,selection,
                 null,sortOrder);
 
@@ -200,7 +200,7 @@ public class MainActivity extends AppCompatActivity implements
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
 
-            mForecastAdapter.swapCursor(data);
+            mForecastAdapter.swapRows(ForecastLoader.getRows(data));
 
             if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
 
@@ -213,8 +213,8 @@ public class MainActivity extends AppCompatActivity implements
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        //        calls mForecastAdapter's swapCursor method and pass null
-        mForecastAdapter.swapCursor(null);
+        //        calls mForecastAdapter's swapRows method and pass no rows
+        mForecastAdapter.swapRows(ForecastLoader.getRows(null));
     }
 }
 
@@ -69,15 +69,23 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         Activity activity = getActivity();
 
+//        Makes sure the syncs and reloads started below already see the new setting
+        SunshinePreferences.refresh(activity);
+
         if (key.equals(getString(R.string.pref_location_key))){
             SunshinePreferences.resetLocationCoordinates(activity);
 
+//            Forecasts are kept per location, so any cached forecast for the new location can be shown right away
+            activity.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_NOTIFY_CHANGE, null, null);
+
 //            Syncs the weather if the location changes
             SunshineSyncUtils.startImmediateSync(activity);
         }
         else if (key.equals(getString(R.string.pref_units_key))){
 //            units have changed. update lists of weather entries accordingly
-            activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            activity.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_NOTIFY_CHANGE, null, null);
         }
 
         Preference preference = findPreference(key);
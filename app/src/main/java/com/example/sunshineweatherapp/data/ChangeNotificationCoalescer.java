@@ -0,0 +1,169 @@
+package com.example.sunshineweatherapp.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the URIs {@link WeatherProvider} changes and notifies observers of them together,
+ * once a short window has passed since the first one. A URI changed several times within the
+ * window is notified once. Observers of a URI also hear about changes to its ancestors, so a
+ * URI is dropped when one of its ancestors is notified anyway, and a URI with more than
+ * {@link #MAX_CHILDREN_PER_PARENT} changed children is notified in their place.
+ * <p>
+ * Every method may be called from any thread. Notifications are sent from the Looper passed to
+ * the constructor.
+ */
+final class ChangeNotificationCoalescer {
+
+    /*
+     * A merge that touches most of a two week forecast changes one URI per day. The forecast
+     * list observes their parent either way, so one notification of the parent replaces them.
+     */
+    static final int MAX_CHILDREN_PER_PARENT = 4;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler;
+    private final long mWindowMillis;
+
+    private final Set<Uri> mPending = new LinkedHashSet<>();
+    private int mPendingRequests;
+
+    private final AtomicLong mPublished = new AtomicLong();
+    private final AtomicLong mSuppressed = new AtomicLong();
+
+    private final Runnable mPublish = new Runnable() {
+        @Override
+        public void run() {
+            publishPending();
+        }
+    };
+
+    /**
+     * @param windowMillis How long to collect URIs after the first one before notifying. With 0
+     *                     the notification is sent as soon as the Looper gets to it.
+     */
+    ChangeNotificationCoalescer(ContentResolver resolver, Looper looper, long windowMillis) {
+        mResolver = resolver;
+        mHandler = new Handler(looper);
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Marks a URI as changed. Observers are told when the current window closes.
+     */
+    void notifyChange(Uri uri) {
+        synchronized (this) {
+            mPendingRequests++;
+            mPending.add(uri);
+            if (mPendingRequests > 1) {
+                return;
+            }
+        }
+        mHandler.postDelayed(mPublish, mWindowMillis);
+    }
+
+    /**
+     * @return The number of notifications sent to observers
+     */
+    long getPublishedCount() {
+        return mPublished.get();
+    }
+
+    /**
+     * @return The number of changes that did not need a notification of their own, because
+     * they were repeated or covered by another notification
+     */
+    long getSuppressedCount() {
+        return mSuppressed.get();
+    }
+
+    private void publishPending() {
+        List<Uri> changed;
+        int requests;
+        synchronized (this) {
+            changed = new ArrayList<>(mPending);
+            requests = mPendingRequests;
+            mPending.clear();
+            mPendingRequests = 0;
+        }
+
+        List<Uri> toNotify = coalesce(changed);
+        for (Uri uri : toNotify) {
+            mResolver.notifyChange(uri, null);
+        }
+        mPublished.addAndGet(toNotify.size());
+        mSuppressed.addAndGet(requests - toNotify.size());
+    }
+
+    /**
+     * Reduces a set of changed URIs to the fewest URIs whose notification still reaches every
+     * observer of the changed ones.
+     */
+    static List<Uri> coalesce(List<Uri> changed) {
+        /* Replace crowded siblings with their parent */
+        Map<Uri, List<Uri>> childrenByParent = new LinkedHashMap<>();
+        for (Uri uri : changed) {
+            Uri parent = getParent(uri);
+            if (parent == null) {
+                continue;
+            }
+            List<Uri> children = childrenByParent.get(parent);
+            if (children == null) {
+                children = new ArrayList<>();
+                childrenByParent.put(parent, children);
+            }
+            children.add(uri);
+        }
+        Set<Uri> candidates = new LinkedHashSet<>(changed);
+        for (Map.Entry<Uri, List<Uri>> family : childrenByParent.entrySet()) {
+            if (family.getValue().size() > MAX_CHILDREN_PER_PARENT) {
+                candidates.removeAll(family.getValue());
+                candidates.add(family.getKey());
+            }
+        }
+
+        /* Drop what an ancestor's notification already covers */
+        List<Uri> toNotify = new ArrayList<>(candidates.size());
+        for (Uri uri : candidates) {
+            boolean covered = false;
+            for (Uri other : candidates) {
+                if (isAncestor(other, uri)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                toNotify.add(uri);
+            }
+        }
+        return toNotify;
+    }
+
+    private static Uri getParent(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty()) {
+            return null;
+        }
+        Uri.Builder parent = new Uri.Builder()
+                .scheme(uri.getScheme())
+                .authority(uri.getAuthority());
+        for (int i = 0; i < segments.size() - 1; i++) {
+            parent.appendPath(segments.get(i));
+        }
+        return parent.build();
+    }
+
+    private static boolean isAncestor(Uri ancestor, Uri uri) {
+        return uri.toString().startsWith(ancestor.toString() + "/");
+    }
+}
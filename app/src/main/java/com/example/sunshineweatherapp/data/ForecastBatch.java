@@ -0,0 +1,258 @@
+package com.example.sunshineweatherapp.data;
+
+import android.content.ContentValues;
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * A batch of forecast rows held column by column in parallel primitive arrays, one array per
+ * column of {@link WeatherContract.WeatherEntry}. Row i of the batch is made up of the i-th
+ * element of every array.
+ * <p>
+ * This is what the sync pipeline hands from the JSON parser to {@link WeatherProvider}. Compared
+ * to an array of ContentValues it costs no HashMap and no boxed Long/Double/Integer per row, and
+ * the provider can bind the values straight into a compiled INSERT statement.
+ * <p>
+ * A batch travels through {@link android.content.ContentResolver#call} as a Bundle of primitive
+ * arrays, see {@link #toBundle()} and {@link #fromBundle(Bundle)}.
+ */
+public final class ForecastBatch {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+
+    private boolean mHasCoordinates;
+    private double mLatitude;
+    private double mLongitude;
+
+    long[] mDate;
+    int[] mWeatherId;
+    double[] mMinTemp;
+    double[] mMaxTemp;
+    double[] mHumidity;
+    double[] mPressure;
+    double[] mWindSpeed;
+    double[] mDegrees;
+
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity The number of rows the batch can hold before its arrays must grow
+     */
+    public ForecastBatch(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        mDate = new long[capacity];
+        mWeatherId = new int[capacity];
+        mMinTemp = new double[capacity];
+        mMaxTemp = new double[capacity];
+        mHumidity = new double[capacity];
+        mPressure = new double[capacity];
+        mWindSpeed = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Appends one day's forecast to the end of the batch.
+     *
+     * @param date      Normalized UTC date of the forecast
+     * @param weatherId Open Weather Map condition id
+     * @param minTemp   Low temperature in degrees Celsius
+     * @param maxTemp   High temperature in degrees Celsius
+     * @param humidity  Humidity in percent
+     * @param pressure  Pressure in hPa
+     * @param windSpeed Wind speed in km/h
+     * @param degrees   Wind direction in compass degrees
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp,
+                    double humidity, double pressure, double windSpeed, double degrees) {
+        if (mSize == mDate.length) {
+            grow();
+        }
+        int i = mSize++;
+        mDate[i] = date;
+        mWeatherId[i] = weatherId;
+        mMinTemp[i] = minTemp;
+        mMaxTemp[i] = maxTemp;
+        mHumidity[i] = humidity;
+        mPressure[i] = pressure;
+        mWindSpeed[i] = windSpeed;
+        mDegrees[i] = degrees;
+    }
+
+    private void grow() {
+        int capacity = mDate.length * 2;
+        mDate = Arrays.copyOf(mDate, capacity);
+        mWeatherId = Arrays.copyOf(mWeatherId, capacity);
+        mMinTemp = Arrays.copyOf(mMinTemp, capacity);
+        mMaxTemp = Arrays.copyOf(mMaxTemp, capacity);
+        mHumidity = Arrays.copyOf(mHumidity, capacity);
+        mPressure = Arrays.copyOf(mPressure, capacity);
+        mWindSpeed = Arrays.copyOf(mWindSpeed, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    /**
+     * Records where the forecast was made for, as reported by the weather server. The provider
+     * stores these with the batch's location.
+     */
+    public void setCoordinates(double latitude, double longitude) {
+        mHasCoordinates = true;
+        mLatitude = latitude;
+        mLongitude = longitude;
+    }
+
+    public boolean hasCoordinates() {
+        return mHasCoordinates;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public long getDate(int row) {
+        return mDate[row];
+    }
+
+    public int getWeatherId(int row) {
+        return mWeatherId[row];
+    }
+
+    public double getMinTemp(int row) {
+        return mMinTemp[row];
+    }
+
+    public double getMaxTemp(int row) {
+        return mMaxTemp[row];
+    }
+
+    public double getHumidity(int row) {
+        return mHumidity[row];
+    }
+
+    public double getPressure(int row) {
+        return mPressure[row];
+    }
+
+    public double getWindSpeed(int row) {
+        return mWindSpeed[row];
+    }
+
+    public double getDegrees(int row) {
+        return mDegrees[row];
+    }
+
+    /**
+     * Packs the batch into a Bundle of primitive arrays, keyed by column name, so that it can
+     * be passed to {@link WeatherProvider} through ContentResolver#call.
+     *
+     * @return A Bundle holding exactly {@link #size()} rows
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLongArray(WeatherContract.WeatherEntry.COLUMN_DATE, Arrays.copyOf(mDate, mSize));
+        bundle.putIntArray(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, Arrays.copyOf(mWeatherId, mSize));
+        bundle.putDoubleArray(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, Arrays.copyOf(mMinTemp, mSize));
+        bundle.putDoubleArray(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, Arrays.copyOf(mMaxTemp, mSize));
+        bundle.putDoubleArray(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, Arrays.copyOf(mHumidity, mSize));
+        bundle.putDoubleArray(WeatherContract.WeatherEntry.COLUMN_PRESSURE, Arrays.copyOf(mPressure, mSize));
+        bundle.putDoubleArray(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, Arrays.copyOf(mWindSpeed, mSize));
+        bundle.putDoubleArray(WeatherContract.WeatherEntry.COLUMN_DEGREES, Arrays.copyOf(mDegrees, mSize));
+        if (mHasCoordinates) {
+            bundle.putDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT, mLatitude);
+            bundle.putDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG, mLongitude);
+        }
+        return bundle;
+    }
+
+    /**
+     * Copies rows given as ContentValues, as bulkInsert receives them, into a batch. This is the
+     * only place each value is unboxed; from here on the rows are primitive arrays.
+     *
+     * @param values One set of WeatherEntry column values per row. Any other key is ignored.
+     * @return A batch holding the rows in the same order
+     * @throws IllegalArgumentException If a row lacks one of the weather columns
+     */
+    public static ForecastBatch fromContentValues(ContentValues[] values) {
+        ForecastBatch batch = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            Long date = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            Double minTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+            Double humidity = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+            Double degrees = value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+
+            if (date == null || weatherId == null || minTemp == null || maxTemp == null
+                    || humidity == null || pressure == null || windSpeed == null
+                    || degrees == null) {
+                throw new IllegalArgumentException("Forecast row is missing a column: " + value);
+            }
+            batch.add(date, weatherId, minTemp, maxTemp, humidity, pressure, windSpeed, degrees);
+        }
+        return batch;
+    }
+
+    /**
+     * Rebuilds a batch from a Bundle created by {@link #toBundle()}. The arrays are adopted as
+     * they are, not copied.
+     *
+     * @param bundle Bundle created by {@link #toBundle()}
+     * @return The batch held by the Bundle
+     * @throws IllegalArgumentException If a column is missing or the columns differ in length
+     */
+    public static ForecastBatch fromBundle(Bundle bundle) {
+        if (bundle == null) {
+            throw new IllegalArgumentException("A forecast batch Bundle is required");
+        }
+        ForecastBatch batch = new ForecastBatch(1);
+        batch.mDate = bundle.getLongArray(WeatherContract.WeatherEntry.COLUMN_DATE);
+        batch.mWeatherId = bundle.getIntArray(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        batch.mMinTemp = bundle.getDoubleArray(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP);
+        batch.mMaxTemp = bundle.getDoubleArray(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP);
+        batch.mHumidity = bundle.getDoubleArray(WeatherContract.WeatherEntry.COLUMN_HUMIDITY);
+        batch.mPressure = bundle.getDoubleArray(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+        batch.mWindSpeed = bundle.getDoubleArray(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED);
+        batch.mDegrees = bundle.getDoubleArray(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+
+        if (batch.mDate == null || batch.mWeatherId == null || batch.mMinTemp == null
+                || batch.mMaxTemp == null || batch.mHumidity == null || batch.mPressure == null
+                || batch.mWindSpeed == null || batch.mDegrees == null) {
+            throw new IllegalArgumentException("Forecast batch Bundle is missing a column");
+        }
+
+        int size = batch.mDate.length;
+        if (batch.mWeatherId.length != size || batch.mMinTemp.length != size
+                || batch.mMaxTemp.length != size || batch.mHumidity.length != size
+                || batch.mPressure.length != size || batch.mWindSpeed.length != size
+                || batch.mDegrees.length != size) {
+            throw new IllegalArgumentException("Forecast batch columns differ in length");
+        }
+        batch.mSize = size;
+
+        if (bundle.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LAT)
+                && bundle.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LONG)) {
+            batch.setCoordinates(
+                    bundle.getDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT),
+                    bundle.getDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG));
+        }
+        return batch;
+    }
+}
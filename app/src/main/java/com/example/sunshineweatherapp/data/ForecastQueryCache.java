@@ -0,0 +1,349 @@
+package com.example.sunshineweatherapp.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small in-memory cache of the weather queries {@link WeatherProvider} answers, so that the
+ * forecast list, DetailActivity and the weather notification asking for the same rows within
+ * moments of each other do not each go to SQLite for them.
+ * <p>
+ * An entry holds an immutable copy of a query's result and belongs to one location and either
+ * one date or, for list queries, all of that location's dates. Writes invalidate the entries of
+ * the dates they touched plus the location's list entries; nothing else is dropped. Entries are
+ * evicted least recently used first once the cache is full.
+ * <p>
+ * Every method is safe to call from the provider's binder threads.
+ */
+final class ForecastQueryCache {
+
+    /* Date of an entry that depends on all of its location's dates, such as the forecast list */
+    static final long ALL_DATES = Long.MIN_VALUE;
+
+    /* Separates the parts of a key. Cannot appear in a location setting, column name or SQL. */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /* Stands in for a null part of a key, so that null and "null" stay different keys */
+    private static final char KEY_NULL = '\u0001';
+
+    private final int mMaxRowsPerEntry;
+
+    private final LinkedHashMap<String, Entry> mEntries;
+
+    /*
+     * Bumped by every invalidation. A query that started reading SQLite before a write committed
+     * may have read the old rows; comparing generations keeps it from caching them afterwards.
+     */
+    private long mGeneration;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * @param maxEntries      The number of query results kept before the least recently used
+     *                        one is evicted
+     * @param maxRowsPerEntry Results with more rows than this are not cached at all
+     */
+    ForecastQueryCache(final int maxEntries, int maxRowsPerEntry) {
+        mMaxRowsPerEntry = maxRowsPerEntry;
+        mEntries = new LinkedHashMap<String, Entry>(maxEntries * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Builds the key of a query. Everything that can change a query's result is part of it.
+     *
+     * @param locationSetting The canonical location setting the query is scoped to
+     * @param date            The date of a single day query, or {@link #ALL_DATES}
+     */
+    static String buildKey(String locationSetting, long date, String[] projection,
+                           String selection, String[] selectionArgs, String sortOrder) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(locationSetting).append(KEY_SEPARATOR)
+                .append(date).append(KEY_SEPARATOR);
+        appendArray(key, projection);
+        appendPart(key, selection);
+        appendArray(key, selectionArgs);
+        appendPart(key, sortOrder);
+        return key.toString();
+    }
+
+    private static void appendArray(StringBuilder key, String[] parts) {
+        if (parts == null) {
+            key.append(KEY_NULL).append(KEY_SEPARATOR);
+            return;
+        }
+        key.append(parts.length).append(KEY_SEPARATOR);
+        for (String part : parts) {
+            appendPart(key, part);
+        }
+    }
+
+    private static void appendPart(StringBuilder key, String part) {
+        if (part == null) {
+            key.append(KEY_NULL);
+        } else {
+            key.append(part);
+        }
+        key.append(KEY_SEPARATOR);
+    }
+
+    /**
+     * Looks up a query and counts the hit or miss.
+     *
+     * @return A new Cursor over the cached rows, or null if the query is not cached
+     */
+    Cursor get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(key);
+        }
+        if (entry == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return new SnapshotCursor(entry.mColumnNames, entry.mRows);
+    }
+
+    /**
+     * @return The generation to pass to {@link #put} for a query about to read SQLite
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches the result of a query that missed, unless it has too many rows or the cache was
+     * invalidated since {@code generation} was taken.
+     *
+     * @param cursor The result as read from SQLite. If it is cached, it is read to the end and
+     *               closed, and a Cursor over the copy is returned in its place.
+     * @return The Cursor to hand to the caller
+     */
+    Cursor put(String key, String locationSetting, long date, Cursor cursor, long generation) {
+        if (cursor == null || cursor.getCount() > mMaxRowsPerEntry) {
+            return cursor;
+        }
+
+        String[] columnNames = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        try {
+            int row = 0;
+            while (cursor.moveToNext()) {
+                rows[row++] = readRow(cursor, columnNames.length);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Entry entry = new Entry(locationSetting, date, columnNames, rows);
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        return new SnapshotCursor(columnNames, rows);
+    }
+
+    private static Object[] readRow(Cursor cursor, int columnCount) {
+        Object[] values = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    values[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    values[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    values[i] = null;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Drops what a write to one date of a location made stale: the entries for that date and
+     * the location's list entries.
+     */
+    synchronized void invalidateDate(String locationSetting, long date) {
+        mGeneration++;
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.mLocationSetting.equals(locationSetting)
+                    && (entry.mDate == date || entry.mDate == ALL_DATES)) {
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every entry of a location, for writes that cannot tell which dates they touched.
+     */
+    synchronized void invalidateLocation(String locationSetting) {
+        mGeneration++;
+        Iterator<Entry> entries = mEntries.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().mLocationSetting.equals(locationSetting)) {
+                entries.remove();
+            }
+        }
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    private static final class Entry {
+        final String mLocationSetting;
+        final long mDate;
+        final String[] mColumnNames;
+        final Object[][] mRows;
+
+        Entry(String locationSetting, long date, String[] columnNames, Object[][] rows) {
+            mLocationSetting = locationSetting;
+            mDate = date;
+            mColumnNames = columnNames;
+            mRows = rows;
+        }
+    }
+
+    /**
+     * A read-only Cursor over cached rows. The rows are shared between every Cursor handed out
+     * for an entry and are never modified, so creating one costs no copy.
+     */
+    private static final class SnapshotCursor extends AbstractCursor {
+
+        private final String[] mColumnNames;
+        private final Object[][] mRows;
+
+        SnapshotCursor(String[] columnNames, Object[][] rows) {
+            mColumnNames = columnNames;
+            mRows = rows;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mColumnNames.length) {
+                throw new IllegalArgumentException("Requested column " + column
+                        + ", but only " + mColumnNames.length + " columns exist");
+            }
+            if (mPos < 0 || mPos >= mRows.length) {
+                throw new IndexOutOfBoundsException("Cursor is at position " + mPos
+                        + " of " + mRows.length + " rows");
+            }
+            return mRows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return null;
+            }
+            if (value instanceof byte[]) {
+                return Arrays.toString((byte[]) value);
+            }
+            return value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            return value instanceof byte[] ? (byte[]) value : null;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            }
+            if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            }
+            if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            }
+            if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+    }
+}
@@ -16,6 +16,117 @@ public class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * The user's settings, read once and then kept up to date by a listener on the default
+     * SharedPreferences. The getters below cost a single volatile read, instead of fetching the
+     * preferences and looking up their keys and defaults in the resources on every call.
+     */
+    private static volatile Snapshot sSnapshot;
+
+    /*
+     * SharedPreferences only keeps weak references to its listeners, so the one keeping the
+     * snapshot current is held here for as long as the process lives.
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sSnapshotUpdater;
+
+    /*
+     * An immutable copy of the settings the app reads, taken in one go.
+     */
+    private static final class Snapshot {
+
+        final String preferredLocation;
+        final boolean isMetric;
+        final boolean hasCoordinates;
+        final double latitude;
+        final double longitude;
+        final boolean notificationsEnabled;
+        final long lastNotificationTime;
+
+        Snapshot(Context context, SharedPreferences sp) {
+            preferredLocation = sp.getString(context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_location_default));
+
+            String metric = context.getString(R.string.pref_units_metric);
+            isMetric = metric.equals(
+                    sp.getString(context.getString(R.string.pref_units_key), metric));
+
+            hasCoordinates = sp.contains(PREF_COORD_LAT) && sp.contains(PREF_COORD_LONG);
+            /*
+             * This is a hack we have to resort to since you can't store doubles in
+             * SharedPreferences.
+             *
+             * Double.doubleToLongBits returns an integer corresponding to the bits of the given
+             * IEEE 754 double precision value.
+             *
+             * Double.longBitsToDouble does the opposite, converting a long (that represents a
+             * double) into the double itself.
+             */
+            latitude = Double.longBitsToDouble(
+                    sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
+            longitude = Double.longBitsToDouble(
+                    sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+
+            /*
+             * In Sunshine, the user has the ability to say whether she would like notifications
+             * enabled or not. If no preference has been chosen, we reference a bool stored in
+             * bools.xml.
+             */
+            notificationsEnabled = sp.getBoolean(
+                    context.getString(R.string.pref_enable_notifications_key),
+                    context.getResources().getBoolean(R.bool.show_notifications_by_default));
+
+            lastNotificationTime =
+                    sp.getLong(context.getString(R.string.pref_last_notification), 0);
+        }
+    }
+
+    private static Snapshot getSnapshot(Context context) {
+        Snapshot snapshot = sSnapshot;
+        if (snapshot == null) {
+            snapshot = loadSnapshot(context);
+        }
+        return snapshot;
+    }
+
+    private static synchronized Snapshot loadSnapshot(Context context) {
+        if (sSnapshot == null) {
+            final Context appContext = context.getApplicationContext();
+            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sSnapshotUpdater = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    reloadSnapshot(appContext, sharedPreferences);
+                }
+            };
+            sp.registerOnSharedPreferenceChangeListener(sSnapshotUpdater);
+            reloadSnapshot(appContext, sp);
+        }
+        return sSnapshot;
+    }
+
+    /*
+     * Synchronized so that a reload reading older values can never replace a newer snapshot
+     */
+    private static synchronized void reloadSnapshot(Context context, SharedPreferences sp) {
+        sSnapshot = new Snapshot(context, sp);
+    }
+
+    /**
+     * Brings the in-memory settings up to date right away. Settings written through this class
+     * are seen at once, and any others once the change listener runs on the main thread; call
+     * this when code reacting to a change must see it before then, for example when a settings
+     * screen starts a sync for the location just chosen.
+     *
+     * @param context Context used to get the SharedPreferences
+     */
+    public static void refresh(Context context) {
+        if (sSnapshot != null) {
+            reloadSnapshot(context.getApplicationContext(),
+                    PreferenceManager.getDefaultSharedPreferences(context));
+        }
+    }
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -27,12 +138,20 @@ public class SunshinePreferences {
      * @param lon      the longitude of the city
      */
     public static void setLocationDetails(Context context, double lat, double lon) {
+        /* Every sync reports the same coordinates; only a change is worth a write */
+        Snapshot snapshot = getSnapshot(context);
+        if (snapshot.hasCoordinates && Double.compare(snapshot.latitude, lat) == 0
+                && Double.compare(snapshot.longitude, lon) == 0) {
+            return;
+        }
+
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
         SharedPreferences.Editor editor = sp.edit();
 
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+        refresh(context);
     }
 
     /**
@@ -47,6 +166,7 @@ public class SunshinePreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+        refresh(context);
     }
 
     /**
@@ -59,12 +179,7 @@ public class SunshinePreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return getSnapshot(context).preferredLocation;
     }
 
     /**
@@ -74,19 +189,7 @@ public class SunshinePreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return getSnapshot(context).isMetric;
     }
 
     /**
@@ -98,25 +201,8 @@ public class SunshinePreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        double[] preferredCoordinates = new double[2];
-
-        /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
-         */
-        preferredCoordinates[0] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
-
-        return preferredCoordinates;
+        Snapshot snapshot = getSnapshot(context);
+        return new double[]{snapshot.latitude, snapshot.longitude};
     }
 
     /**
@@ -127,39 +213,17 @@ public class SunshinePreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return getSnapshot(context).hasCoordinates;
     }
-    public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
-        /*
-         * In Sunshine, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
-         */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
 
-        return shouldDisplayNotifications;
+    /**
+     * Returns true if the user wants to be notified of new weather.
+     *
+     * @param context Used to access SharedPreferences
+     * @return true if notifications should be shown
+     */
+    public static boolean areNotificationsEnabled(Context context) {
+        return getSnapshot(context).notificationsEnabled;
     }
 
     /**
@@ -169,25 +233,12 @@ public class SunshinePreferences {
      * @return UNIX time of when the last notification was shown
      */
     public static long getLastNotificationTimeInMillis(Context context) {
-        /* Key for accessing the time at which Sunshine last displayed a notification */
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
         /*
-         * Here, we retrieve the time in milliseconds when the last notification was shown. If
-         * SharedPreferences doesn't have a value for lastNotificationKey, we return 0. The reason
-         * we return 0 is because we compare the value returned from this method to the current
-         * system time. If the difference between the last notification time and the current time
-         * is greater than one day, we will show a notification again. When we compare the two
-         * values, we subtract the last notification time from the current system time. If the
-         * time of the last notification was 0, the difference will always be greater than the
-         * number of milliseconds in a day and we will show another notification.
+         * If no notification was shown yet, this is 0. The reason is that we compare it to the
+         * current system time: if the last notification was more than a day ago, we show
+         * another one, and with 0 the difference is always greater than a day.
          */
-        long lastNotificationTime = sp.getLong(lastNotificationKey, 0);
-
-        return lastNotificationTime;
+        return getSnapshot(context).lastNotificationTime;
     }
 
     /**
@@ -218,5 +269,87 @@ public class SunshinePreferences {
         String lastNotificationKey = context.getString(R.string.pref_last_notification);
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
+        refresh(context);
+    }
+
+    /*
+     * HTTP validators live in a file of their own, so that saving them after every sync does
+     * not wake the listeners registered on the default preferences.
+     */
+    private static final String HTTP_VALIDATORS_PREFS_NAME = "http_validators";
+    private static final String KEY_SUFFIX_ETAG = "|etag";
+    private static final String KEY_SUFFIX_LAST_MODIFIED = "|last_modified";
+
+    /**
+     * Returns the validators of the last forecast stored from a URL, to make the next request
+     * for it conditional.
+     *
+     * @param context Context used to get the SharedPreferences
+     * @param url     The request URL, as a String
+     * @return The ETag and the Last-Modified value, either of which may be null
+     */
+    public static String[] getHttpValidators(Context context, String url) {
+        SharedPreferences sp = context.getSharedPreferences(
+                HTTP_VALIDATORS_PREFS_NAME, Context.MODE_PRIVATE);
+        return new String[]{
+                sp.getString(url + KEY_SUFFIX_ETAG, null),
+                sp.getString(url + KEY_SUFFIX_LAST_MODIFIED, null)};
+    }
+
+    /**
+     * Saves the validators of a response. Call this only once its forecast has been stored,
+     * otherwise a later 304 would leave the app without the data it refers to.
+     *
+     * @param context      Context used to get the SharedPreferences
+     * @param url          The request URL, as a String
+     * @param eTag         The response's ETag, or null
+     * @param lastModified The response's Last-Modified value, or null
+     */
+    public static void saveHttpValidators(Context context, String url,
+                                          String eTag, String lastModified) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(
+                HTTP_VALIDATORS_PREFS_NAME, Context.MODE_PRIVATE).edit();
+        if (eTag != null) {
+            editor.putString(url + KEY_SUFFIX_ETAG, eTag);
+        } else {
+            editor.remove(url + KEY_SUFFIX_ETAG);
+        }
+        if (lastModified != null) {
+            editor.putString(url + KEY_SUFFIX_LAST_MODIFIED, lastModified);
+        } else {
+            editor.remove(url + KEY_SUFFIX_LAST_MODIFIED);
+        }
+        editor.apply();
+    }
+
+    /*
+     * The periodic sync's interval changes after most syncs, so it also lives in a file of its
+     * own rather than among the user's settings.
+     */
+    private static final String SYNC_SCHEDULE_PREFS_NAME = "sync_schedule";
+    private static final String KEY_SYNC_INTERVAL_SECONDS = "sync_interval_seconds";
+
+    /**
+     * Returns the interval the periodic sync is scheduled with.
+     *
+     * @param context        Context used to get the SharedPreferences
+     * @param defaultSeconds The interval to use while none has been saved
+     * @return The interval in seconds
+     */
+    public static long getSyncIntervalSeconds(Context context, long defaultSeconds) {
+        return context.getSharedPreferences(SYNC_SCHEDULE_PREFS_NAME, Context.MODE_PRIVATE)
+                .getLong(KEY_SYNC_INTERVAL_SECONDS, defaultSeconds);
+    }
+
+    /**
+     * Saves the interval the periodic sync is scheduled with.
+     *
+     * @param context         Context used to get the SharedPreferences
+     * @param intervalSeconds The interval in seconds
+     */
+    public static void saveSyncIntervalSeconds(Context context, long intervalSeconds) {
+        context.getSharedPreferences(SYNC_SCHEDULE_PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(KEY_SYNC_INTERVAL_SECONDS, intervalSeconds)
+                .apply();
     }
-}
\ No newline at end of file
+}
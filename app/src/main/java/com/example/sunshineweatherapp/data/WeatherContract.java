@@ -20,6 +20,8 @@ import android.provider.BaseColumns;
 
 import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
 
+import java.util.Locale;
+
 /**
  * Defines table and column names for the weather database. This class is not necessary, but keeps
  * the code organized.
@@ -32,6 +34,131 @@ public class WeatherContract {
 
     public static final String PATH_WEATHER = "weather";
 
+    public static final String PATH_LOCATION = "location";
+
+    /*
+     * Provider methods reachable through ContentResolver#call. They carry a ForecastBatch as a
+     * Bundle of primitive arrays, which ContentValues based bulkInsert cannot do.
+     */
+
+    /*
+     * Both methods take the location setting the batch belongs to as their String argument. A
+     * null argument means the user's preferred location.
+     */
+
+    /* Inserts the ForecastBatch passed as extras, see ForecastBatch#toBundle */
+    public static final String METHOD_INSERT_FORECAST_BATCH = "insertForecastBatch";
+
+    /*
+     * Merges the ForecastBatch passed as extras into the stored forecast: changed dates are
+     * updated, new dates inserted and stored dates missing from the batch deleted.
+     */
+    public static final String METHOD_MERGE_FORECAST_BATCH = "mergeForecastBatch";
+
+    /* Keys of the int row counts in the Bundle returned by the methods above */
+    public static final String EXTRA_ROWS_INSERTED = "rowsInserted";
+    public static final String EXTRA_ROWS_UPDATED = "rowsUpdated";
+    public static final String EXTRA_ROWS_DELETED = "rowsDeleted";
+
+    /*
+     * Also returned by METHOD_MERGE_FORECAST_BATCH: how much the merge changed the forecast of
+     * the next 48 hours. The largest change of a high or low temperature (a double), the number
+     * of days whose weather condition changed, and the number of days that had a stored
+     * forecast to compare with (both ints).
+     */
+    public static final String EXTRA_NEAR_TERM_TEMP_CHANGE = "nearTermTempChange";
+    public static final String EXTRA_NEAR_TERM_CONDITION_CHANGES = "nearTermConditionChanges";
+    public static final String EXTRA_NEAR_TERM_DAYS_COMPARED = "nearTermDaysCompared";
+
+    /*
+     * Reports how the provider's in-memory query cache is doing. Takes no argument and returns
+     * the long hit and miss counts since the provider was created.
+     */
+    public static final String METHOD_GET_QUERY_CACHE_STATS = "getQueryCacheStats";
+
+    public static final String EXTRA_CACHE_HITS = "cacheHits";
+    public static final String EXTRA_CACHE_MISSES = "cacheMisses";
+
+    /*
+     * Asks the provider to notify observers of the URI given as the String argument (null means
+     * WeatherEntry.CONTENT_URI), for changes that are not writes, such as a new units setting.
+     * Going through the provider lets the notification coalesce with the provider's own.
+     */
+    public static final String METHOD_NOTIFY_CHANGE = "notifyChange";
+
+    /*
+     * Reports the provider's change notifications as longs: the number sent to observers, and the
+     * number of changes that needed none of their own because they were repeated within the
+     * coalescing window or covered by a notification of a parent URI.
+     */
+    public static final String METHOD_GET_NOTIFICATION_STATS = "getNotificationStats";
+
+    public static final String EXTRA_NOTIFICATIONS_PUBLISHED = "notificationsPublished";
+    public static final String EXTRA_NOTIFICATIONS_SUPPRESSED = "notificationsSuppressed";
+
+    /*
+     * Reports the sync state of the location given as the String argument (null means the
+     * preferred location): EXTRA_LAST_SYNC (a long, 0 if it was never synced),
+     * EXTRA_SOURCE_FINGERPRINT (a String, or absent) and EXTRA_HAS_FORECAST (a boolean, true if
+     * a forecast from today onwards is stored). It answers from the location row and a LIMIT 1
+     * query on the (location, date) index, so it is cheap enough for the launch path.
+     */
+    public static final String METHOD_GET_SYNC_STATE = "getSyncState";
+
+    /*
+     * Records a successful sync of the location given as the String argument, with the
+     * EXTRA_LAST_SYNC and EXTRA_SOURCE_FINGERPRINT passed as extras.
+     */
+    public static final String METHOD_RECORD_SYNC = "recordSync";
+
+    public static final String EXTRA_LAST_SYNC = "lastSync";
+    public static final String EXTRA_SOURCE_FINGERPRINT = "sourceFingerprint";
+    public static final String EXTRA_HAS_FORECAST = "hasForecast";
+
+
+    /**
+     * The locations Sunshine holds a forecast for. Each one is identified by its location
+     * setting, the canonical form of the query the user typed in, see
+     * {@link #canonicalizeLocationSetting(String)}.
+     */
+    public static class LocationEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION)
+                .build();
+
+        public static final String TABLE_NAME = "location";
+
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        /* Coordinates of the city as reported by the weather server; null until the first sync */
+        public static final String COLUMN_COORD_LAT = "coord_lat";
+
+        public static final String COLUMN_COORD_LONG = "coord_long";
+
+        /*
+         * When the server last confirmed the stored forecast of the location as current, by
+         * sending it or answering Not Modified, in UTC milliseconds; null until the first sync
+         */
+        public static final String COLUMN_LAST_SYNC = "last_sync";
+
+        /*
+         * What that forecast was requested with (location and units). A sync asking with a
+         * different fingerprint cannot reuse the stored forecast however recent it is.
+         */
+        public static final String COLUMN_SOURCE_FINGERPRINT = "source_fingerprint";
+
+        /**
+         * Turns a location query into the key it is stored under, so that "Mountain View, CA"
+         * and " mountain view,  ca" share one cached forecast.
+         *
+         * @param locationSetting The location as entered in the preferences
+         * @return The trimmed, lower case query with runs of whitespace collapsed
+         */
+        public static String canonicalizeLocationSetting(String locationSetting) {
+            return locationSetting.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+        }
+    }
 
     public static class WeatherEntry implements BaseColumns{
 
@@ -41,6 +168,9 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        /* The _ID of the LocationEntry row this forecast belongs to */
+        public static final String COLUMN_LOCATION_ID = "location_id";
+
         public static final String COLUMN_DATE = "date";
 
         public static final String COLUMN_WEATHER_ID = "weather_id";
@@ -58,12 +188,40 @@ public class WeatherContract {
         public static final String COLUMN_DEGREES = "degrees";
 
 
+        /*
+         * CONTENT_URI and the URIs built by buildWeatherUriWithDate always refer to the user's
+         * preferred location. The URIs below name a location explicitly, which lets any cached
+         * location be read without changing the preference.
+         */
+
         public static Uri buildWeatherUriWithDate(long date) {
             return CONTENT_URI.buildUpon()
                     .appendPath(Long.toString(date))
                     .build();
         }
 
+        public static Uri buildWeatherUriWithLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_LOCATION)
+                    .appendPath(LocationEntry.canonicalizeLocationSetting(locationSetting))
+                    .build();
+        }
+
+        public static Uri buildWeatherUriWithLocationAndDate(String locationSetting, long date) {
+            return buildWeatherUriWithLocation(locationSetting).buildUpon()
+                    .appendPath(Long.toString(date))
+                    .build();
+        }
+
+        /**
+         * @param uri A URI built by {@link #buildWeatherUriWithLocation(String)} or
+         *            {@link #buildWeatherUriWithLocationAndDate(String, long)}
+         * @return The location setting held in the URI
+         */
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
         public static String getSqlSelectForTodayOnwards() {
             long normalizedUtcNow = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
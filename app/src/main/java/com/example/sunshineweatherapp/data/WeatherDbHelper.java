@@ -16,8 +16,10 @@
 package com.example.sunshineweatherapp.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 /**
  * Manages a local database for weather data.
@@ -26,42 +28,98 @@ import android.database.sqlite.SQLiteOpenHelper;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     public static final String DATABASE_NAME = "weather.db";
-    public static final int DATABASE_VERSION = 3;
-
+    public static final int DATABASE_VERSION = 5;
+
+    /*
+     * Checkpoint policy for the write-ahead log. A sync writes a few dozen pages, so the log is
+     * folded back into the database after every sync (see checkpoint) rather than in the middle
+     * of one. The framework already truncates the log file back to 512 KB afterwards.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    private final Context mContext;
+
+    /**
+     * The database is opened in write-ahead-log mode, so the sync's write transaction no longer
+     * blocks the CursorLoaders reading the forecast: readers see the last committed data while
+     * the writer appends to the log.
+     */
     public WeatherDbHelper(Context context){
         super(context, DATABASE_NAME,null,DATABASE_VERSION);
+        mContext = context;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
     }
-    @Override
-    public void onCreate(SQLiteDatabase sqLiteDatabase) {
 
-        final String SQL_CREATE_WEATHER_TABLE =
-
-                "CREATE TABLE " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
-
-                        WeatherContract.WeatherEntry._ID                    + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                        WeatherContract.WeatherEntry.COLUMN_DATE            + " INTEGER NOT NULL, "          +
-                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID      + " INTEGER NOT NULL, "          +
-                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP        + " REAL NOT NULL, "             +
-                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP        + " REAL NOT NULL, "             +
-                        WeatherContract.WeatherEntry.COLUMN_HUMIDITY        + " REAL NOT NULL, "             +
-                        WeatherContract.WeatherEntry.COLUMN_PRESSURE        + " REAL NOT NULL, "             +
-                        WeatherContract.WeatherEntry.COLUMN_WIND_SPEED      + " REAL NOT NULL, "             +
-                        WeatherContract.WeatherEntry.COLUMN_DEGREES         + " REAL NOT NULL, "             +
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+//        Before Jelly Bean the helper cannot be asked for WAL, so switch the open database over
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+        runPragma(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+    }
 
-        " UNIQUE (" + WeatherContract.WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+    /**
+     * Copies what the write-ahead log holds back into the database, without waiting for readers
+     * that are still using it. Meant to be called once a sync's writes have committed.
+     */
+    static void checkpoint(SQLiteDatabase db) {
+        runPragma(db, "PRAGMA wal_checkpoint(PASSIVE)");
+    }
 
-        ;
+    /*
+     * These pragmas return a row, which execSQL refuses, so they are run as a query instead.
+     */
+    private static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
 
-        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+//        The schema itself lives in WeatherDbMigrations, next to the steps that upgrade to it
+        for (String statement : WeatherDbMigrations.getCreateStatements()) {
+            sqLiteDatabase.execSQL(statement);
+        }
 
     }
 
+    /**
+     * Upgrades the database one version at a time, keeping the cached forecast. Each step is
+     * defined in {@link WeatherDbMigrations}. SQLiteOpenHelper runs this inside a transaction,
+     * so a failing step leaves the database at its old version.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
 
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherContract.WeatherEntry.TABLE_NAME);
-
-        onCreate(sqLiteDatabase);
+        if (oldVersion < WeatherDbMigrations.OLDEST_MIGRATABLE_VERSION) {
+//            There is no migration path from these early schemas, so start over
+            for (String statement : WeatherDbMigrations.getDropStatements()) {
+                sqLiteDatabase.execSQL(statement);
+            }
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        String defaultLocationSetting = WeatherContract.LocationEntry.canonicalizeLocationSetting(
+                SunshinePreferences.getPreferredWeatherLocation(mContext));
+
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            for (String statement
+                    : WeatherDbMigrations.getUpgradeStatements(version, defaultLocationSetting)) {
+                sqLiteDatabase.execSQL(statement);
+            }
+        }
     }
 
 //  TODO (12) Create a public static final String called DATABASE_NAME with value "weather.db"
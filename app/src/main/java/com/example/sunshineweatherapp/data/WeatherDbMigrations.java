@@ -0,0 +1,202 @@
+package com.example.sunshineweatherapp.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The SQL that creates the weather database and moves it from one version to the next.
+ * <p>
+ * Each DATABASE_VERSION bump adds one step to {@link #getUpgradeStatements(int, String)}. A step
+ * changes the schema in place (ALTER TABLE, CREATE INDEX, or a copy into a rebuilt table when
+ * SQLite cannot alter a constraint) and keeps every cached row, so an app update does not send
+ * the whole user base back to the network at once.
+ * <p>
+ * Only plain SQL strings live here, with no Android types, so that the migrations can be run
+ * against a desktop SQLite by the JVM unit tests.
+ */
+final class WeatherDbMigrations {
+
+    /* Databases older than this have no migration path and are recreated empty */
+    static final int OLDEST_MIGRATABLE_VERSION = 3;
+
+    /* Covering index used by the per location forecast queries */
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date";
+
+    /*
+     * The weather table as version 3 created it. Kept only so the migration tests can build a
+     * version 3 database; never executed by the app.
+     */
+    static final String SQL_CREATE_WEATHER_TABLE_V3 =
+
+            "CREATE TABLE " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+
+                    WeatherContract.WeatherEntry._ID                    + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE            + " INTEGER NOT NULL, "          +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID      + " INTEGER NOT NULL, "          +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED      + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES         + " REAL NOT NULL, "             +
+
+    " UNIQUE (" + WeatherContract.WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+    private static final String SQL_CREATE_LOCATION_TABLE_V4 =
+
+            "CREATE TABLE " + WeatherContract.LocationEntry.TABLE_NAME + " (" +
+
+                    WeatherContract.LocationEntry._ID                       + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING   + " TEXT UNIQUE NOT NULL, "           +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LAT          + " REAL, "                          +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LONG         + " REAL);";
+
+    private static final String SQL_CREATE_LOCATION_TABLE_V5 =
+
+            "CREATE TABLE " + WeatherContract.LocationEntry.TABLE_NAME + " (" +
+
+                    WeatherContract.LocationEntry._ID                       + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING   + " TEXT UNIQUE NOT NULL, "           +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LAT          + " REAL, "                          +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LONG         + " REAL, "                          +
+                    WeatherContract.LocationEntry.COLUMN_LAST_SYNC          + " INTEGER, "                       +
+                    WeatherContract.LocationEntry.COLUMN_SOURCE_FINGERPRINT + " TEXT);";
+
+    private static final String SQL_CREATE_WEATHER_TABLE_V4 =
+
+            "CREATE TABLE " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+
+                    WeatherContract.WeatherEntry._ID                    + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    WeatherContract.WeatherEntry.COLUMN_LOCATION_ID     + " INTEGER NOT NULL, "          +
+                    WeatherContract.WeatherEntry.COLUMN_DATE            + " INTEGER NOT NULL, "          +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID      + " INTEGER NOT NULL, "          +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE        + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED      + " REAL NOT NULL, "             +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES         + " REAL NOT NULL, "             +
+
+                    " FOREIGN KEY (" + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + ") REFERENCES " +
+                    WeatherContract.LocationEntry.TABLE_NAME + " (" + WeatherContract.LocationEntry._ID + "), " +
+
+    " UNIQUE (" + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+    /*
+     * The UNIQUE constraint above already gives us an index on (location_id, date). This one
+     * also carries the columns of the main forecast list, so that list is answered from the
+     * index alone without touching the table.
+     */
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX_V4 =
+
+            "CREATE INDEX " + WEATHER_LOCATION_DATE_INDEX + " ON " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ");";
+
+    /* The columns that version 3 and version 4 weather tables have in common */
+    private static final String WEATHER_COLUMNS_V3 =
+            WeatherContract.WeatherEntry.COLUMN_DATE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherContract.WeatherEntry.COLUMN_DEGREES;
+
+    private WeatherDbMigrations() {
+    }
+
+    /**
+     * @return The statements that create the current schema in an empty database
+     */
+    static List<String> getCreateStatements() {
+        return Arrays.asList(
+                SQL_CREATE_LOCATION_TABLE_V5,
+                SQL_CREATE_WEATHER_TABLE_V4,
+                SQL_CREATE_WEATHER_LOCATION_DATE_INDEX_V4);
+    }
+
+    /**
+     * @return The statements that drop every table, used when a database is too old to migrate
+     */
+    static List<String> getDropStatements() {
+        return Arrays.asList(
+                "DROP TABLE IF EXISTS " + WeatherContract.WeatherEntry.TABLE_NAME,
+                "DROP TABLE IF EXISTS " + WeatherContract.LocationEntry.TABLE_NAME);
+    }
+
+    /**
+     * Returns the statements that move a database from {@code toVersion - 1} to
+     * {@code toVersion}. They must run in order and within one transaction, which
+     * SQLiteOpenHelper already provides for onUpgrade.
+     *
+     * @param toVersion              The version this step upgrades to
+     * @param defaultLocationSetting Canonical location setting that rows cached before
+     *                               locations existed are assigned to
+     * @return The statements of this step, possibly none
+     */
+    static List<String> getUpgradeStatements(int toVersion, String defaultLocationSetting) {
+        switch (toVersion) {
+            case 4:
+                return upgradeToVersion4(defaultLocationSetting);
+            case 5:
+                return upgradeToVersion5();
+            default:
+                throw new IllegalArgumentException("No migration to version " + toVersion);
+        }
+    }
+
+    /*
+     * Version 4 introduced the location table. The existing rows were fetched for the preferred
+     * location, so they are moved under it. SQLite cannot change the weather table's UNIQUE
+     * constraint in place, hence the rebuild and copy.
+     */
+    private static List<String> upgradeToVersion4(String defaultLocationSetting) {
+        final String oldWeatherTable = WeatherContract.WeatherEntry.TABLE_NAME + "_v3";
+        List<String> statements = new ArrayList<>();
+        statements.add(SQL_CREATE_LOCATION_TABLE_V4);
+        statements.add("INSERT INTO " + WeatherContract.LocationEntry.TABLE_NAME + " (" +
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + ") VALUES (" +
+                sqlEscapeString(defaultLocationSetting) + ")");
+        statements.add("ALTER TABLE " + WeatherContract.WeatherEntry.TABLE_NAME +
+                " RENAME TO " + oldWeatherTable);
+        statements.add(SQL_CREATE_WEATHER_TABLE_V4);
+        statements.add("INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + ", " + WEATHER_COLUMNS_V3 + ")" +
+                " SELECT (SELECT " + WeatherContract.LocationEntry._ID + " FROM " +
+                WeatherContract.LocationEntry.TABLE_NAME + "), " + WEATHER_COLUMNS_V3 +
+                " FROM " + oldWeatherTable);
+        statements.add("DROP TABLE " + oldWeatherTable);
+        statements.add(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX_V4);
+        return Collections.unmodifiableList(statements);
+    }
+
+    /*
+     * Version 5 records when each location was last synced, and with what, so that a sync can
+     * tell a recent forecast from a stale one. Locations migrated from version 4 have neither,
+     * which makes their next sync fetch.
+     */
+    private static List<String> upgradeToVersion5() {
+        return Collections.unmodifiableList(Arrays.asList(
+                "ALTER TABLE " + WeatherContract.LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                        WeatherContract.LocationEntry.COLUMN_LAST_SYNC + " INTEGER",
+                "ALTER TABLE " + WeatherContract.LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                        WeatherContract.LocationEntry.COLUMN_SOURCE_FINGERPRINT + " TEXT"));
+    }
+
+    /**
+     * Quotes a String as an SQL literal. DatabaseUtils#sqlEscapeString does the same, but is not
+     * available to the JVM tests.
+     */
+    private static String sqlEscapeString(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
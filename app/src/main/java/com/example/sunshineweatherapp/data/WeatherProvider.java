@@ -1,26 +1,126 @@
 package com.example.sunshineweatherapp.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.HandlerThread;
+import android.os.Process;
 
 import androidx.annotation.NonNull;
 
+import com.example.sunshineweatherapp.R;
 import com.example.sunshineweatherapp.utilities.SunshineDateUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class WeatherProvider extends ContentProvider {
 
     public static final int CODE_WEATHER = 100;
 
     public static final int CODE_WEATHER_WITH_DATE = 101;
 
+    public static final int CODE_WEATHER_WITH_LOCATION = 102;
+
+    public static final int CODE_WEATHER_WITH_LOCATION_AND_DATE = 103;
+
+    public static final int CODE_LOCATION = 300;
+
     private static final UriMatcher sUriMatcher = buildUriMatcher();
 
+    /*
+     * Column order of this statement is the order in which insertForecastBatch binds the
+     * values. The table's UNIQUE (location_id, date) ON CONFLICT REPLACE clause still applies
+     * to it.
+     */
+    private static final String SQL_INSERT_WEATHER =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+                    + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /* Used by mergeForecastBatch. The location and date are bound last, after the seven values. */
+    private static final String SQL_UPDATE_WEATHER_FOR_DATE =
+            "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME + " SET "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES + " = ? "
+                    + "WHERE " + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    private static final String SQL_DELETE_WEATHER_FOR_DATE =
+            "DELETE FROM " + WeatherContract.WeatherEntry.TABLE_NAME
+                    + " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    private static final String SELECTION_LOCATION =
+            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ?";
+
+    private static final String SELECTION_LOCATION_AND_DATE =
+            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    /* Columns read back by mergeForecastBatch, in the same order as SQL_INSERT_WEATHER */
+    private static final String[] MERGE_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    /* Today and tomorrow: the days whose changes say how fast the weather is moving */
+    private static final int NEAR_TERM_DAYS = 2;
+
+    private static final String[] SYNC_STATE_PROJECTION = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LAST_SYNC,
+            WeatherContract.LocationEntry.COLUMN_SOURCE_FINGERPRINT
+    };
+
+    /*
+     * A handful of queries are asked over and over: the forecast list, today's row for the
+     * notification and the day DetailActivity shows. Fourteen days of forecast fit easily.
+     */
+    private static final int QUERY_CACHE_MAX_ENTRIES = 32;
+    private static final int QUERY_CACHE_MAX_ROWS = 64;
+
     private WeatherDbHelper mOpenHelper;
 
+    private ForecastQueryCache mQueryCache;
+
+    private ChangeNotificationCoalescer mChangeNotifier;
+
+    /* Set on the thread running applyBatch for as long as the batch's transaction is open */
+    private final ThreadLocal<BatchState> mBatchState = new ThreadLocal<>();
+
     public static UriMatcher buildUriMatcher(){
         final UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
         final String authority = WeatherContract.CONTENT_AUTHORITY;
@@ -29,6 +129,16 @@ public class WeatherProvider extends ContentProvider {
 
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_LOCATION + "/*",
+                CODE_WEATHER_WITH_LOCATION);
+
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_LOCATION + "/*/#",
+                CODE_WEATHER_WITH_LOCATION_AND_DATE);
+
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION, CODE_LOCATION);
+
         return matcher;
 
     }
@@ -37,9 +147,170 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mQueryCache = new ForecastQueryCache(QUERY_CACHE_MAX_ENTRIES, QUERY_CACHE_MAX_ROWS);
+
+//        Notifications are sent from their own thread, so neither writers nor the UI wait on them
+        HandlerThread notifierThread = new HandlerThread(
+                "WeatherProviderNotifier", Process.THREAD_PRIORITY_BACKGROUND);
+        notifierThread.start();
+        mChangeNotifier = new ChangeNotificationCoalescer(
+                getContext().getContentResolver(),
+                notifierThread.getLooper(),
+                getContext().getResources().getInteger(R.integer.change_notification_window_millis));
         return true;
     }
 
+    /**
+     * Works out which location a weather URI refers to. CONTENT_URI and the plain per-date URIs
+     * mean the user's preferred location, the others carry the location setting themselves.
+     *
+     * @return The canonical location setting
+     */
+    private String getLocationSetting(Uri uri, int match) {
+        switch (match) {
+            case CODE_WEATHER_WITH_LOCATION:
+            case CODE_WEATHER_WITH_LOCATION_AND_DATE:
+                return WeatherContract.LocationEntry.canonicalizeLocationSetting(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(uri));
+            default:
+                return getPreferredLocationSetting();
+        }
+    }
+
+    private String getPreferredLocationSetting() {
+        return WeatherContract.LocationEntry.canonicalizeLocationSetting(
+                SunshinePreferences.getPreferredWeatherLocation(getContext()));
+    }
+
+    /**
+     * @return The _ID of the location row for the setting, or -1 if that location has never
+     * been stored
+     */
+    private static long getLocationId(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the _ID of the location row for the setting, creating the row if needed. Must be
+     * called on a writable database, normally from within the caller's transaction.
+     */
+    private static long getOrCreateLocationId(SQLiteDatabase db, String locationSetting) {
+        long locationId = getLocationId(db, locationSetting);
+        if (locationId == -1) {
+            ContentValues locationValues = new ContentValues();
+            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            locationId = db.insertOrThrow(WeatherContract.LocationEntry.TABLE_NAME, null, locationValues);
+        }
+        return locationId;
+    }
+
+    /**
+     * Stores the coordinates the weather server reported for a location, if the batch has them.
+     */
+    private static void updateLocationCoordinates(SQLiteDatabase db, long locationId,
+                                                  ForecastBatch batch) {
+        if (!batch.hasCoordinates()) {
+            return;
+        }
+        ContentValues coordinates = new ContentValues();
+        coordinates.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, batch.getLatitude());
+        coordinates.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, batch.getLongitude());
+        db.update(WeatherContract.LocationEntry.TABLE_NAME, coordinates,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
+    }
+
+    /**
+     * Builds the URI to notify for one changed date of a location. Rows of the preferred
+     * location are notified on the plain per-date URI that DetailActivity observes; both forms
+     * are descendants of CONTENT_URI, so the forecast list hears about either.
+     */
+    private Uri buildChangedDateUri(String locationSetting, long date) {
+        if (locationSetting.equals(getPreferredLocationSetting())) {
+            return WeatherContract.WeatherEntry.buildWeatherUriWithDate(date);
+        }
+        return WeatherContract.WeatherEntry.buildWeatherUriWithLocationAndDate(locationSetting, date);
+    }
+
+    /**
+     * Prepends the location clause to a caller's selection.
+     */
+    private static String withLocation(String selection) {
+        if (selection == null) {
+            return SELECTION_LOCATION;
+        }
+        return SELECTION_LOCATION + " AND (" + selection + ")";
+    }
+
+    private static String[] withLocation(long locationId, String[] selectionArgs) {
+        if (selectionArgs == null) {
+            return new String[]{Long.toString(locationId)};
+        }
+        String[] args = new String[selectionArgs.length + 1];
+        args[0] = Long.toString(locationId);
+        System.arraycopy(selectionArgs, 0, args, 1, selectionArgs.length);
+        return args;
+    }
+
+    /**
+     * Tells observers about a change. The URI goes to the {@link ChangeNotificationCoalescer},
+     * which notifies once per distinct URI after a short window; inside applyBatch it is held
+     * back until the batch's transaction has committed.
+     */
+    private void notifyChange(Uri uri) {
+        BatchState batch = mBatchState.get();
+        if (batch != null) {
+            batch.mChangedUris.add(uri);
+        } else {
+            mChangeNotifier.notifyChange(uri);
+        }
+    }
+
+    /**
+     * Drops the cached queries a write to one date made stale. Inside applyBatch this is
+     * repeated once the transaction ends, because a query made before then still saw the rows
+     * as they were.
+     */
+    private void invalidateDate(String locationSetting, long date) {
+        mQueryCache.invalidateDate(locationSetting, date);
+        deferInvalidation(locationSetting, date);
+    }
+
+    /**
+     * Drops every cached query of a location, see {@link #invalidateDate(String, long)}.
+     */
+    private void invalidateLocation(String locationSetting) {
+        mQueryCache.invalidateLocation(locationSetting);
+        deferInvalidation(locationSetting, ForecastQueryCache.ALL_DATES);
+    }
+
+    private void deferInvalidation(String locationSetting, long date) {
+        BatchState batch = mBatchState.get();
+        if (batch != null) {
+            batch.mInvalidatedLocations.add(locationSetting);
+            batch.mInvalidatedDates.add(date);
+        }
+    }
+
+    /**
+     * What applyBatch defers until its transaction has ended: the URIs to notify and the cache
+     * entries to drop. A date of ForecastQueryCache.ALL_DATES stands for the whole location.
+     */
+    private static final class BatchState {
+        final Set<Uri> mChangedUris = new LinkedHashSet<>();
+        final List<String> mInvalidatedLocations = new ArrayList<>();
+        final List<Long> mInvalidatedDates = new ArrayList<>();
+    }
+
 //    Implements the bulkInsert method
 
     /**
@@ -48,6 +319,9 @@ public class WeatherProvider extends ContentProvider {
      * for inserting a single row of data into our ContentProvider, and so we are only going to
      * implement bulkInsert. In a normal ContentProvider's implementation, you will probably want
      * to provide proper functionality for the insert method as well.
+     * <p>
+     * The rows are stored for the location the URI refers to; any location_id in the values is
+     * ignored.
      *
      * @param uri    The content:// URI of the insertion request.
      * @param values An array of sets of column_name/value pairs to add to the database.
@@ -57,73 +331,463 @@ public class WeatherProvider extends ContentProvider {
      */
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values){
 
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int match = sUriMatcher.match(uri);
 
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
 
-//            performs the implementation of bulkInsert only if the URI matches the CODE_WEATHER code
+//            performs the implementation of bulkInsert only if the URI matches a location's weather
             case CODE_WEATHER:
-                db.beginTransaction();
-                int rowInserted = 0;
-                try {
-                    for (ContentValues value : values) {
-                        long weatherDate =
-                                value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert ");
-                        }
-
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            rowInserted++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                }finally {
-                    db.endTransaction();
+            case CODE_WEATHER_WITH_LOCATION:
+//                One pass turns the ContentValues into primitive columns, then a single compiled
+//                statement writes them all
+                int rowInserted = insertForecastBatch(
+                        getLocationSetting(uri, match), ForecastBatch.fromContentValues(values));
 
-                }
                 if (rowInserted > 0){
-                    getContext().getContentResolver().notifyChange(uri,null);
+                    notifyChange(uri);
                 }
 
 //            returns the number of rows inserted from the implementation of bulkInsert
                 return rowInserted;
 
-//            returns the super implementation of bulkInsert if the URI does not match the CODE_WEATHER
+//            returns the super implementation of bulkInsert if the URI does not match a location's weather
                 default:
                     return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Handles the provider methods declared in {@link WeatherContract}. These are reached through
+     * ContentResolver#call and are used by the sync to hand over a whole {@link ForecastBatch}
+     * without converting it to ContentValues first.
+     *
+     * @param method The method name, one of WeatherContract's METHOD_ constants
+     * @param arg    The location setting the batch belongs to, or null for the preferred location
+     * @param extras The ForecastBatch, as created by {@link ForecastBatch#toBundle()}
+     *
+     * @return A Bundle holding the number of rows inserted (and, for a merge, updated and
+     * deleted), or the query cache's or the change notifications' counters
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_GET_QUERY_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(WeatherContract.EXTRA_CACHE_HITS, mQueryCache.getHitCount());
+            result.putLong(WeatherContract.EXTRA_CACHE_MISSES, mQueryCache.getMissCount());
+            return result;
+        }
+        if (WeatherContract.METHOD_GET_NOTIFICATION_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(WeatherContract.EXTRA_NOTIFICATIONS_PUBLISHED,
+                    mChangeNotifier.getPublishedCount());
+            result.putLong(WeatherContract.EXTRA_NOTIFICATIONS_SUPPRESSED,
+                    mChangeNotifier.getSuppressedCount());
+            return result;
+        }
+        if (WeatherContract.METHOD_NOTIFY_CHANGE.equals(method)) {
+            notifyChange(arg == null ? WeatherContract.WeatherEntry.CONTENT_URI : Uri.parse(arg));
+            return null;
+        }
+
+        String locationSetting = arg == null
+                ? getPreferredLocationSetting()
+                : WeatherContract.LocationEntry.canonicalizeLocationSetting(arg);
+
+        if (WeatherContract.METHOD_INSERT_FORECAST_BATCH.equals(method)) {
+            int rowsInserted = insertForecastBatch(locationSetting, ForecastBatch.fromBundle(extras));
+            if (rowsInserted > 0) {
+                notifyChange(WeatherContract.WeatherEntry.buildWeatherUriWithLocation(locationSetting));
+            }
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_ROWS_INSERTED, rowsInserted);
+            return result;
+        }
+        if (WeatherContract.METHOD_MERGE_FORECAST_BATCH.equals(method)) {
+            return mergeForecastBatch(locationSetting, ForecastBatch.fromBundle(extras));
+        }
+        if (WeatherContract.METHOD_GET_SYNC_STATE.equals(method)) {
+            return getSyncState(locationSetting);
+        }
+        if (WeatherContract.METHOD_RECORD_SYNC.equals(method)) {
+            recordSync(locationSetting, extras.getLong(WeatherContract.EXTRA_LAST_SYNC),
+                    extras.getString(WeatherContract.EXTRA_SOURCE_FINGERPRINT));
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Reads when the location was last synced, with what fingerprint, and whether a forecast
+     * from today onwards is stored for it. The location table is not cached, so this always
+     * reads the database; it costs two indexed lookups.
+     */
+    private Bundle getSyncState(String locationSetting) {
+        Bundle result = new Bundle();
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = -1;
+        Cursor location = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                SYNC_STATE_PROJECTION,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null, null, null);
+        try {
+            if (location.moveToFirst()) {
+                locationId = location.getLong(0);
+                result.putLong(WeatherContract.EXTRA_LAST_SYNC,
+                        location.isNull(1) ? 0 : location.getLong(1));
+                result.putString(WeatherContract.EXTRA_SOURCE_FINGERPRINT, location.getString(2));
+            }
+        } finally {
+            location.close();
+        }
+
+        boolean hasForecast = false;
+        if (locationId != -1) {
+            Cursor forecast = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    new String[]{WeatherContract.WeatherEntry._ID},
+                    withLocation(WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards()),
+                    withLocation(locationId, null),
+                    null, null, null, "1");
+            try {
+                hasForecast = forecast.moveToFirst();
+            } finally {
+                forecast.close();
+            }
+        }
+        result.putBoolean(WeatherContract.EXTRA_HAS_FORECAST, hasForecast);
+        return result;
+    }
+
+    /**
+     * Stores when and with what fingerprint the location was synced, creating its row if this
+     * is its first sync. Nothing observes the location table, so no one is notified.
+     */
+    private void recordSync(String locationSetting, long lastSync, String sourceFingerprint) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            long locationId = getOrCreateLocationId(db, locationSetting);
+            ContentValues syncState = new ContentValues();
+            syncState.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNC, lastSync);
+            syncState.put(WeatherContract.LocationEntry.COLUMN_SOURCE_FINGERPRINT, sourceFingerprint);
+            db.update(WeatherContract.LocationEntry.TABLE_NAME, syncState,
+                    WeatherContract.LocationEntry._ID + " = ?",
+                    new String[]{Long.toString(locationId)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Brings the stored forecast of a location in line with the batch, touching only what
+     * differs. Within one transaction, the location's stored rows are compared by date with the
+     * batch: rows whose values changed are updated, dates the store does not have yet are
+     * inserted, and stored dates that are no longer part of the batch have expired and are
+     * deleted. Rows that are already identical are left alone, as are other locations' rows.
+     * <p>
+     * Only the per-date URIs of rows that actually changed are notified, so a sync that brings
+     * nothing new wakes no observer at all.
+     *
+     * @param locationSetting The canonical location setting the batch belongs to
+     * @param batch           The complete forecast as just fetched. Every date must be normalized.
+     *
+     * @return A Bundle holding the number of rows inserted, updated and deleted, and how much
+     * the forecast of the next 48 hours changed
+     */
+    private Bundle mergeForecastBatch(String locationSetting, ForecastBatch batch) {
+        int size = batch.size();
+        checkDatesNormalized(batch);
+        Map<Long, Integer> rowForDate = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            rowForDate.put(batch.mDate[i], i);
+        }
+
+        boolean[] stored = new boolean[size];
+        boolean[] changed = new boolean[size];
+        long[] expiredDates = new long[0];
+        int expiredCount = 0;
+        int rowsInserted = 0;
+        int rowsUpdated = 0;
+        int rowsDeleted = 0;
+
+        /* How much the next 48 hours changed, which drives the periodic sync's interval */
+        long nearTermStart = SunshineDateUtils.getNormalizedUtcDateForToday();
+        long nearTermEnd = nearTermStart + NEAR_TERM_DAYS * SunshineDateUtils.DAY_IN_MILLIS;
+        double nearTermTempChange = 0;
+        int nearTermConditionChanges = 0;
+        int nearTermDaysCompared = 0;
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+        SQLiteStatement update = db.compileStatement(SQL_UPDATE_WEATHER_FOR_DATE);
+        SQLiteStatement delete = db.compileStatement(SQL_DELETE_WEATHER_FOR_DATE);
+        try {
+            long locationId = getOrCreateLocationId(db, locationSetting);
+            updateLocationCoordinates(db, locationId, batch);
+
+            /*
+             * Decide what to do with every stored row first, and only write once the cursor is
+             * closed, so that the writes never disturb the window the cursor is reading from.
+             */
+            Cursor existing = db.query(WeatherContract.WeatherEntry.TABLE_NAME, MERGE_PROJECTION,
+                    SELECTION_LOCATION, new String[]{Long.toString(locationId)},
+                    null, null, null);
+            try {
+                while (existing.moveToNext()) {
+                    long date = existing.getLong(0);
+                    Integer row = rowForDate.get(date);
+                    if (row == null) {
+                        /* This date is no longer part of the forecast */
+                        if (expiredCount == expiredDates.length) {
+                            expiredDates = Arrays.copyOf(expiredDates, expiredCount * 2 + 4);
+                        }
+                        expiredDates[expiredCount++] = date;
+                    } else {
+                        stored[row] = true;
+                        changed[row] = !isRowUnchanged(existing, batch, row);
+                        if (date >= nearTermStart && date < nearTermEnd) {
+                            nearTermDaysCompared++;
+                            if (existing.getInt(1) != batch.mWeatherId[row]) {
+                                nearTermConditionChanges++;
+                            }
+                            nearTermTempChange = Math.max(nearTermTempChange, Math.max(
+                                    Math.abs(existing.getDouble(2) - batch.mMinTemp[row]),
+                                    Math.abs(existing.getDouble(3) - batch.mMaxTemp[row])));
+                        }
+                    }
+                }
+            } finally {
+                existing.close();
+            }
+
+            for (int i = 0; i < expiredCount; i++) {
+                delete.bindLong(1, locationId);
+                delete.bindLong(2, expiredDates[i]);
+                rowsDeleted += delete.executeUpdateDelete();
+            }
+
+            for (int i = 0; i < size; i++) {
+                if (!stored[i]) {
+                    insert.bindLong(1, locationId);
+                    insert.bindLong(2, batch.mDate[i]);
+                    bindWeatherValues(insert, batch, i, 3);
+                    changed[i] = insert.executeInsert() != -1;
+                    if (changed[i]) {
+                        rowsInserted++;
+                    }
+                } else if (changed[i]) {
+                    bindWeatherValues(update, batch, i, 1);
+                    update.bindLong(8, locationId);
+                    update.bindLong(9, batch.mDate[i]);
+                    rowsUpdated += update.executeUpdateDelete();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            update.close();
+            delete.close();
+            db.endTransaction();
+        }
+
+        if ((expiredCount > 0 || rowsInserted > 0 || rowsUpdated > 0) && !db.inTransaction()) {
+            WeatherDbHelper.checkpoint(db);
+        }
+
+        for (int i = 0; i < expiredCount; i++) {
+            invalidateDate(locationSetting, expiredDates[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            if (changed[i]) {
+                invalidateDate(locationSetting, batch.mDate[i]);
+            }
+        }
+
+        for (int i = 0; i < expiredCount; i++) {
+            notifyChange(buildChangedDateUri(locationSetting, expiredDates[i]));
+        }
+        for (int i = 0; i < size; i++) {
+            if (changed[i]) {
+                notifyChange(buildChangedDateUri(locationSetting, batch.mDate[i]));
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.EXTRA_ROWS_INSERTED, rowsInserted);
+        result.putInt(WeatherContract.EXTRA_ROWS_UPDATED, rowsUpdated);
+        result.putInt(WeatherContract.EXTRA_ROWS_DELETED, rowsDeleted);
+        result.putDouble(WeatherContract.EXTRA_NEAR_TERM_TEMP_CHANGE, nearTermTempChange);
+        result.putInt(WeatherContract.EXTRA_NEAR_TERM_CONDITION_CHANGES, nearTermConditionChanges);
+        result.putInt(WeatherContract.EXTRA_NEAR_TERM_DAYS_COMPARED, nearTermDaysCompared);
+        return result;
+    }
+
+    /**
+     * Rejects a batch holding any date that is not normalized, before anything is written.
+     */
+    private static void checkDatesNormalized(ForecastBatch batch) {
+        int row = SunshineDateUtils.indexOfUnnormalizedDate(batch.mDate, batch.size());
+        if (row != -1) {
+            throw new IllegalArgumentException(
+                    "Date must be normalized to insert: " + batch.mDate[row]);
+        }
+    }
+
+    /**
+     * Binds the seven value columns of one batch row (everything but the location and date),
+     * in SQL_INSERT_WEATHER order, starting at the given bind index.
+     */
+    private static void bindWeatherValues(SQLiteStatement statement, ForecastBatch batch,
+                                          int row, int firstIndex) {
+        statement.bindLong(firstIndex, batch.mWeatherId[row]);
+        statement.bindDouble(firstIndex + 1, batch.mMinTemp[row]);
+        statement.bindDouble(firstIndex + 2, batch.mMaxTemp[row]);
+        statement.bindDouble(firstIndex + 3, batch.mHumidity[row]);
+        statement.bindDouble(firstIndex + 4, batch.mPressure[row]);
+        statement.bindDouble(firstIndex + 5, batch.mWindSpeed[row]);
+        statement.bindDouble(firstIndex + 6, batch.mDegrees[row]);
+    }
+
+    /**
+     * @return true if the current row of a MERGE_PROJECTION cursor holds exactly the values of
+     * the given batch row
+     */
+    private static boolean isRowUnchanged(Cursor existing, ForecastBatch batch, int row) {
+        return existing.getInt(1) == batch.mWeatherId[row]
+                && existing.getDouble(2) == batch.mMinTemp[row]
+                && existing.getDouble(3) == batch.mMaxTemp[row]
+                && existing.getDouble(4) == batch.mHumidity[row]
+                && existing.getDouble(5) == batch.mPressure[row]
+                && existing.getDouble(6) == batch.mWindSpeed[row]
+                && existing.getDouble(7) == batch.mDegrees[row];
+    }
+
+    /**
+     * Writes every row of the batch in one transaction through a single compiled INSERT
+     * statement. Values are bound straight from the batch's primitive arrays, so no
+     * ContentValues, boxing or per-row SQL compilation is involved.
+     *
+     * @param locationSetting The canonical location setting the batch belongs to
+     * @param batch           The rows to insert. Every date must be normalized.
+     *
+     * @return The number of rows inserted
+     */
+    private int insertForecastBatch(String locationSetting, ForecastBatch batch) {
+        int size = batch.size();
+        checkDatesNormalized(batch);
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsInserted = 0;
+        db.beginTransactionNonExclusive();
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            long locationId = getOrCreateLocationId(db, locationSetting);
+            updateLocationCoordinates(db, locationId, batch);
+            for (int i = 0; i < size; i++) {
+                insert.bindLong(1, locationId);
+                insert.bindLong(2, batch.mDate[i]);
+                bindWeatherValues(insert, batch, i, 3);
+                if (insert.executeInsert() != -1) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+        for (int i = 0; i < size; i++) {
+            invalidateDate(locationSetting, batch.mDate[i]);
+        }
+        return rowsInserted;
+    }
+
+    /**
+     * Answers weather queries from {@link ForecastQueryCache} when it can, and caches what it had
+     * to read from SQLite. The location table is always read from the database.
+     */
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         Cursor cursor;
+        int match = sUriMatcher.match(uri);
 
-        switch (sUriMatcher.match(uri)){
+        switch (match){
 
-            case CODE_WEATHER_WITH_DATE: {
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_WEATHER_WITH_LOCATION_AND_DATE: {
 
+                String locationSetting = getLocationSetting(uri, match);
                 String normalizedUtcDateString = uri.getLastPathSegment();
+                long date = Long.parseLong(normalizedUtcDateString);
 
-                String [] selectionArguments = new String[]{normalizedUtcDateString};
+//                The selection is not used by these URIs, so it is not part of the key either
+                String key = ForecastQueryCache.buildKey(
+                        locationSetting, date, projection, null, null, sortOrder);
+                cursor = mQueryCache.get(key);
+                if (cursor != null) {
+                    break;
+                }
+                long generation = mQueryCache.getGeneration();
 
-                cursor = mOpenHelper.getReadableDatabase().query(
+                final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+
+                /*
+                 * A location that was never stored gets the id -1, which matches no row, so the
+                 * caller still receives a (empty) Cursor that will be notified once data arrives.
+                 */
+                long locationId = getLocationId(db, locationSetting);
+
+                String [] selectionArguments =
+                        new String[]{Long.toString(locationId), normalizedUtcDateString};
+
+                cursor = db.query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
 
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        SELECTION_LOCATION_AND_DATE,
                         selectionArguments,
                         null,
                         null,sortOrder);
 
+                cursor = mQueryCache.put(key, locationSetting, date, cursor, generation);
                 break;
                 }
 
-            case CODE_WEATHER: {
-                cursor = mOpenHelper.getReadableDatabase().query(
+            case CODE_WEATHER:
+            case CODE_WEATHER_WITH_LOCATION: {
+                String locationSetting = getLocationSetting(uri, match);
+
+                String key = ForecastQueryCache.buildKey(locationSetting,
+                        ForecastQueryCache.ALL_DATES, projection, selection, selectionArgs, sortOrder);
+                cursor = mQueryCache.get(key);
+                if (cursor != null) {
+                    break;
+                }
+                long generation = mQueryCache.getGeneration();
+
+                final SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+                long locationId = getLocationId(db, locationSetting);
+
+                cursor = db.query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
+                        withLocation(selection),
+                        withLocation(locationId, selectionArgs),
+                        null,
+                        null,
+                        sortOrder);
+
+                cursor = mQueryCache.put(key, locationSetting,
+                        ForecastQueryCache.ALL_DATES, cursor, generation);
+                break;
+            }
+
+            case CODE_LOCATION: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
                         selection,
                         selectionArgs,
                         null,
@@ -145,45 +809,229 @@ public class WeatherProvider extends ContentProvider {
         throw new RuntimeException("We are not implementing getType in Sunshine.");
     }
 
+    /**
+     * Inserts a single forecast row for the location the URI refers to, replacing the row that
+     * location already has for that date. Syncs should keep using bulkInsert or the batch
+     * methods; this is for one-off rows and for applyBatch.
+     *
+     * @param uri           CONTENT_URI, or a location's weather URI
+     * @param contentValues The WeatherEntry values of the row. Any location_id is ignored.
+     *
+     * @return The URI of the inserted row's date, or null if it could not be inserted
+     */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues contentValues) {
-        throw new RuntimeException(
-                "WE are not implementing insert in Sunshine. Use bulkInsert instead"
-        );
+        int match = sUriMatcher.match(uri);
+
+        switch (match) {
+            case CODE_WEATHER:
+            case CODE_WEATHER_WITH_LOCATION: {
+                Long weatherDate = contentValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (weatherDate == null || !SunshineDateUtils.isDateNormalized(weatherDate)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert ");
+                }
+
+                String locationSetting = getLocationSetting(uri, match);
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                long _id;
+                db.beginTransactionNonExclusive();
+                try {
+                    ContentValues locationValue = new ContentValues(contentValues);
+                    locationValue.put(WeatherContract.WeatherEntry.COLUMN_LOCATION_ID,
+                            getOrCreateLocationId(db, locationSetting));
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, locationValue);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (_id == -1) {
+                    return null;
+                }
+
+                Uri dateUri = buildChangedDateUri(locationSetting, weatherDate);
+                invalidateDate(locationSetting, weatherDate);
+                notifyChange(dateUri);
+                return dateUri;
+            }
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
     }
 
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
 
         int numRowsDeleted;
+        int match = sUriMatcher.match(uri);
 
-        if (null == selection) selection = "1";
-        switch (sUriMatcher.match(uri)){
+        switch (match){
 
-//            Implements the functionality to delete ALL rows in the weather table if given the proper URI
+//            Implements the functionality to delete ALL of a location's rows in the weather table if given the proper URI
             case CODE_WEATHER:
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+            case CODE_WEATHER_WITH_LOCATION: {
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                String locationSetting = getLocationSetting(uri, match);
+                long locationId = getLocationId(db, locationSetting);
+                numRowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME,
-                        selection,
-                        selectionArgs);
+                        withLocation(selection),
+                        withLocation(locationId, selectionArgs));
+
+//                The selection may match any date, so all of the location's entries go
+                if (numRowsDeleted != 0) {
+                    invalidateLocation(locationSetting);
+                }
 
                 break;
+            }
+
+//            Deletes the one row of a location and date
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_WEATHER_WITH_LOCATION_AND_DATE: {
+                final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                String locationSetting = getLocationSetting(uri, match);
+                long date = Long.parseLong(uri.getLastPathSegment());
+                numRowsDeleted = db.delete(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        SELECTION_LOCATION_AND_DATE,
+                        new String[]{Long.toString(getLocationId(db, locationSetting)),
+                                Long.toString(date)});
+
+                if (numRowsDeleted != 0) {
+                    invalidateDate(locationSetting, date);
+                }
+
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 //        notifies that a change has occured to this URI if any rows are deleted
         if (numRowsDeleted !=0){
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
 //        Returns the number of rows deleted
         return numRowsDeleted;
     }
 
+    /**
+     * Changes stored forecast rows in place, for corrections that do not justify refetching
+     * and rewriting the whole forecast, such as a revised temperature for today.
+     * <p>
+     * A per-date URI updates that one row and ignores the selection. CONTENT_URI and a
+     * location's weather URI update the location's rows that match the selection. The
+     * location_id column belongs to the provider and cannot be updated.
+     *
+     * @return The number of rows updated
+     */
     @Override
     public int update(@NonNull Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
-        throw new RuntimeException("We are not implementing update in Sunshine");
+
+        if (contentValues.containsKey(WeatherContract.WeatherEntry.COLUMN_LOCATION_ID)) {
+            throw new IllegalArgumentException("The location of a forecast row cannot be updated");
+        }
+        Long newDate = contentValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        if (contentValues.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)
+                && (newDate == null || !SunshineDateUtils.isDateNormalized(newDate))) {
+            throw new IllegalArgumentException("Date must be normalized to update ");
+        }
+
+        int numRowsUpdated;
+        int match = sUriMatcher.match(uri);
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String locationSetting = getLocationSetting(uri, match);
+
+        switch (match) {
+
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_WEATHER_WITH_LOCATION_AND_DATE: {
+                long date = Long.parseLong(uri.getLastPathSegment());
+                numRowsUpdated = db.update(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        contentValues,
+                        SELECTION_LOCATION_AND_DATE,
+                        new String[]{Long.toString(getLocationId(db, locationSetting)),
+                                Long.toString(date)});
+
+                if (numRowsUpdated != 0) {
+                    invalidateDate(locationSetting, date);
+                    if (newDate != null) {
+                        invalidateDate(locationSetting, newDate);
+                    }
+                }
+                break;
+            }
+
+            case CODE_WEATHER:
+            case CODE_WEATHER_WITH_LOCATION: {
+                numRowsUpdated = db.update(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        contentValues,
+                        withLocation(selection),
+                        withLocation(getLocationId(db, locationSetting), selectionArgs));
+
+//                As with delete, the selection may have matched any date
+                if (numRowsUpdated != 0) {
+                    invalidateLocation(locationSetting);
+                }
+                break;
+            }
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        if (numRowsUpdated != 0) {
+            notifyChange(uri);
+        }
+        return numRowsUpdated;
+    }
+
+    /**
+     * Runs all of the operations in one SQLite transaction: either every one of them is applied
+     * or, if one fails, none is. The URIs the operations changed are only handed to the
+     * notification coalescer after the commit, so observers hear once per URI instead of once
+     * per operation.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (mBatchState.get() != null) {
+//            Already part of an outer batch, which owns the transaction and the notification
+            return super.applyBatch(operations);
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        BatchState batch = new BatchState();
+        ContentProviderResult[] results;
+        mBatchState.set(batch);
+        db.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchState.set(null);
+
+//            Queries made by the batch itself saw uncommitted rows, so drop them either way
+            for (int i = 0; i < batch.mInvalidatedLocations.size(); i++) {
+                long date = batch.mInvalidatedDates.get(i);
+                if (date == ForecastQueryCache.ALL_DATES) {
+                    mQueryCache.invalidateLocation(batch.mInvalidatedLocations.get(i));
+                } else {
+                    mQueryCache.invalidateDate(batch.mInvalidatedLocations.get(i), date);
+                }
+            }
+        }
+
+        for (Uri changedUri : batch.mChangedUris) {
+            mChangeNotifier.notifyChange(changedUri);
+        }
+        return results;
     }
 
 }
@@ -0,0 +1,67 @@
+package com.example.sunshineweatherapp.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long to wait before the next periodic sync, from how much the last sync changed
+ * the near-term forecast.
+ * <p>
+ * Only the next 48 hours count: they are what the user looks at, and what moves when a system
+ * passes through. If a sync changed the weather condition of one of those days, or moved a
+ * temperature by {@link #VOLATILE_TEMP_CHANGE} degrees or more, the interval is halved. If it
+ * changed no condition and no temperature by {@link #STABLE_TEMP_CHANGE} degrees or more, the
+ * interval grows by half. Otherwise it stays. It always stays within
+ * [{@link #MIN_INTERVAL_SECONDS}, {@link #MAX_INTERVAL_SECONDS}].
+ * <p>
+ * The decision is a pure function of its arguments, so it is tested on the JVM.
+ */
+final class AdaptiveSyncScheduler {
+
+    /* The interval before anything is known, and the one Sunshine always used */
+    static final long DEFAULT_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(3);
+
+    /*
+     * A periodic sync may run as little as the interval less its flex after the one before.
+     * That gap, 80 minutes at the minimum, must outlast sync_freshness_ttl_minutes, or the
+     * freshness policy would find the forecast fresh and skip the very sync scheduled for it.
+     */
+    static final long MIN_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(2);
+    static final long MAX_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(8);
+
+    /* Temperature changes, in degrees Celsius, as stored */
+    static final double STABLE_TEMP_CHANGE = 1.0;
+    static final double VOLATILE_TEMP_CHANGE = 3.0;
+
+    private AdaptiveSyncScheduler() {
+    }
+
+    /**
+     * @param currentIntervalSeconds The interval the sync that just ran was scheduled with
+     * @param tempChange             The largest change, in degrees, of a high or low
+     *                               temperature over the next 48 hours
+     * @param conditionChanges       The number of those days whose weather condition changed
+     * @param compared               false if there was no previous forecast of those days to
+     *                               compare with, which says nothing about the weather
+     * @return The interval for the next sync, in seconds
+     */
+    static long nextIntervalSeconds(long currentIntervalSeconds, double tempChange,
+                                    int conditionChanges, boolean compared) {
+        long next = currentIntervalSeconds;
+        if (compared) {
+            if (conditionChanges > 0 || tempChange >= VOLATILE_TEMP_CHANGE) {
+                next = currentIntervalSeconds / 2;
+            } else if (tempChange < STABLE_TEMP_CHANGE) {
+                next = currentIntervalSeconds + currentIntervalSeconds / 2;
+            }
+        }
+        return Math.max(MIN_INTERVAL_SECONDS, Math.min(MAX_INTERVAL_SECONDS, next));
+    }
+
+    /**
+     * @return How much later than the interval the sync may run, which lets the scheduler batch
+     * it with other work: a third of the interval, as Sunshine always allowed
+     */
+    static long flexSeconds(long intervalSeconds) {
+        return intervalSeconds / 3;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.sunshineweatherapp.sync;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs at most one piece of work per key at a time. A caller that asks for a key whose work is
+ * already in flight does not start it again: it waits for the running work and shares its
+ * result, or its exception.
+ * <p>
+ * Once the work finishes the key is free again, so a later caller runs it afresh. Nothing is
+ * cached past the end of the flight.
+ *
+ * @param <K> The key that identifies duplicate work
+ * @param <V> The result of the work
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> mInFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong mExecuted = new AtomicLong();
+    private final AtomicLong mJoined = new AtomicLong();
+
+    /**
+     * Runs the work on the calling thread, unless work for the same key is in flight, in which
+     * case that work's outcome is waited for and returned instead.
+     *
+     * @return The result of whichever call ran the work
+     * @throws Exception Whatever the work threw
+     */
+    V execute(K key, Callable<V> work) throws Exception {
+        FutureTask<V> task = new FutureTask<>(work);
+        FutureTask<V> inFlight = mInFlight.putIfAbsent(key, task);
+        if (inFlight != null) {
+            mJoined.incrementAndGet();
+            return getResult(inFlight);
+        }
+
+        try {
+            mExecuted.incrementAndGet();
+            task.run();
+        } finally {
+            mInFlight.remove(key, task);
+        }
+        return getResult(task);
+    }
+
+    private static <V> V getResult(FutureTask<V> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The number of times the work actually ran
+     */
+    long getExecutedCount() {
+        return mExecuted.get();
+    }
+
+    /**
+     * @return The number of callers that shared work already in flight: the duplicate runs
+     * avoided
+     */
+    long getJoinedCount() {
+        return mJoined.get();
+    }
+}
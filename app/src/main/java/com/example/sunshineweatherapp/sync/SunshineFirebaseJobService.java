@@ -16,20 +16,29 @@
 package com.example.sunshineweatherapp.sync;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.example.sunshineweatherapp.utilities.CancellationToken;
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.concurrent.Future;
+
 // COMPLETED (2) Make sure you've imported the jobdispatcher.JobService, not job.JobService
 
 // COMPLETED (3) Add a class called SunshineFirebaseJobService that extends jobdispatcher.JobService
 public class SunshineFirebaseJobService extends JobService {
 
 //  COMPLETED (4) Declare an ASyncTask field called mFetchWeatherTask
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    /*
+     * The sync runs on the sync engine rather than in an AsyncTask: AsyncTask.cancel(true) only
+     * interrupts the thread, which does not reach a blocking HTTP read. The token does.
+     */
+    private Future<?> mFetchWeatherTask;
+    private CancellationToken mFetchWeatherCancellation;
 
 //  COMPLETED (5) Override onStartJob and within it, spawn off a separate ASyncTask to sync weather data
     /**
@@ -45,22 +54,27 @@ public class SunshineFirebaseJobService extends JobService {
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
+        final CancellationToken cancellation = new CancellationToken();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        mFetchWeatherCancellation = cancellation;
+        mFetchWeatherTask = SyncEngine.getInstance().submit(new Runnable() {
             @Override
-            protected Void doInBackground(Void... voids) {
+            public void run() {
                 Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                return null;
-            }
+                SunshineSyncTask.syncWeather(context, cancellation);
 
-            @Override
-            protected void onPostExecute(Void aVoid) {
-                //  COMPLETED (6) Once the weather data is sync'd, call jobFinished with the appropriate arguements
-                jobFinished(jobParameters, false);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        /* A stopped job must not report back */
+                        if (!cancellation.isCanceled()) {
+                            //  COMPLETED (6) Once the weather data is sync'd, call jobFinished with the appropriate arguements
+                            jobFinished(jobParameters, false);
+                        }
+                    }
+                });
             }
-        };
-
-        mFetchWeatherTask.execute();
+        }, SyncEngine.PRIORITY_BACKGROUND);
         return true;
     }
 
@@ -76,7 +90,9 @@ public class SunshineFirebaseJobService extends JobService {
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
         if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+            /* Drops the sync if it is still queued, and stops its download and parse if not */
+            mFetchWeatherCancellation.cancel();
+            mFetchWeatherTask.cancel(false);
         }
         return true;
     }
@@ -1,58 +1,212 @@
 package com.example.sunshineweatherapp.sync;
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.sunshineweatherapp.R;
+import com.example.sunshineweatherapp.data.ForecastBatch;
 import com.example.sunshineweatherapp.data.SunshinePreferences;
 import com.example.sunshineweatherapp.data.WeatherContract;
+import com.example.sunshineweatherapp.utilities.CancellationToken;
+import com.example.sunshineweatherapp.utilities.ForecastResponse;
 import com.example.sunshineweatherapp.utilities.NetworkUtils;
 import com.example.sunshineweatherapp.utilities.NotificationUtils;
 import com.example.sunshineweatherapp.utilities.OpenWeatherJsonUtils;
 
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SunshineSyncTask {
 
-    synchronized public static void syncWeather(Context context){
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
 
-        try {     /*
+    /*
+     * Syncs are started by SunshineSyncUtils.initialize, by every immediate sync after a
+     * settings change and by the scheduled job. Those that overlap for the same location and
+     * units share one fetch rather than queueing up for a redundant one each. A flight's result
+     * says whether it ran to the end, rather than being cancelled.
+     */
+    private static final SingleFlight<String, Boolean> sSyncFlight = new SingleFlight<>();
+
+    /* Syncs that found the stored forecast fresh enough to skip the network */
+    private static final AtomicLong sFetchesAvoided = new AtomicLong();
+
+    /**
+     * Performs a sync of the preferred location, or joins the one already running for it.
+     */
+    public static void syncWeather(Context context) {
+        syncWeather(context, CancellationToken.NONE);
+    }
+
+    /**
+     * As {@link #syncWeather(Context)}, but cancelling the token stops the sync wherever it is:
+     * the download is disconnected, parsing stops at its next read and nothing is written.
+     */
+    public static void syncWeather(Context context, CancellationToken cancellation) {
+        /*
          * The getUrl method will return the URL that we need to get the forecast JSON for the
          * weather. It will decide whether to create a URL based off of the latitude and
          * longitude or off of a simple location as a String.
          */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+        URL weatherRequestUrl = NetworkUtils.getUrl(context);
+
+        /*
+         * The forecast is stored under the location it was requested for, even if the user
+         * picks another location while this sync is still running.
+         */
+        String locationSetting = SunshinePreferences.getPreferredWeatherLocation(context);
+
+        syncLocation(context, locationSetting, weatherRequestUrl, cancellation);
+    }
+
+    /*
+     * Joins the sync in flight for the location and units, or else runs one holding the
+     * location's lock. A flight runs with its leader's token, so a joiner whose flight was
+     * cancelled under it runs the sync again rather than return with nothing done.
+     */
+    private static void syncLocation(final Context context, final String locationSetting,
+                                     final URL weatherRequestUrl,
+                                     final CancellationToken cancellation) {
+        String syncKey = getSourceFingerprint(context, locationSetting);
+        while (true) {
+            final boolean[] ranHere = new boolean[1];
+            boolean completed;
+            try {
+                completed = sSyncFlight.execute(syncKey, new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        ranHere[0] = true;
+                        SyncEngine.getInstance().runExclusive(locationSetting, new Runnable() {
+                            @Override
+                            public void run() {
+                                performSync(context, locationSetting, weatherRequestUrl,
+                                        cancellation);
+                            }
+                        });
+                        return !cancellation.isCanceled();
+                    }
+                });
+            } catch (Exception e) {
+                /* performSync handles its own failures */
+                e.printStackTrace();
+                return;
+            }
+            if (ranHere[0]) {
+                return;
+            }
+            if (completed || cancellation.isCanceled()) {
+                Log.d(TAG, "Joined the sync in flight for " + syncKey + ", "
+                        + sSyncFlight.getJoinedCount() + " duplicate syncs avoided so far");
+                return;
+            }
+            Log.d(TAG, "The sync joined for " + syncKey + " was canceled, syncing again");
+        }
+    }
 
-            /* Uses the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+    private static void performSync(Context context, String locationSetting,
+                                    URL weatherRequestUrl, CancellationToken cancellation) {
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+//        CPU time of this thread, so that work avoided (304s, compression) shows up in the log
+        long cpuStartMillis = SystemClock.currentThreadTimeMillis();
 
+        try {
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
+             * Don't ask the server at all if what we stored for the location is recent and was
+             * requested the same way.
+             */
+            String sourceFingerprint = getSourceFingerprint(context, locationSetting);
+            SyncFreshnessPolicy.Decision freshness =
+                    checkFreshness(context, locationSetting, sourceFingerprint);
+            if (!freshness.shouldFetch()) {
+                Log.d(TAG, "Forecast for " + locationSetting + " is still fresh, "
+                        + sFetchesAvoided.incrementAndGet() + " fetches avoided so far");
+                return;
+            }
+
+            /*
+             * Ask the server for the forecast only if it changed since the one we stored. The
+             * validators are only worth sending while that forecast is still in the database.
+             */
+            String requestUrl = weatherRequestUrl.toString();
+            String[] validators = freshness != SyncFreshnessPolicy.Decision.FETCH_NO_FORECAST
+                    ? SunshinePreferences.getHttpValidators(context, requestUrl)
+                    : new String[2];
+
+            /*
+             * Parse the JSON into a list of weather values straight off the connection, without
+             * first reading the whole response into a String.
+             */
+            ForecastBatch weatherValues;
+            ForecastResponse weatherResponse = NetworkUtils.getConditionalResponseFromHttpUrl(
+                    weatherRequestUrl, validators[0], validators[1], cancellation);
+            try {
+                if (weatherResponse.isNotModified()) {
+                    /* What we have stored is current: nothing to parse, write or notify about */
+                    recordSync(context, locationSetting, sourceFingerprint);
+                    /* Nothing changed at all: the weather is as stable as it gets */
+                    adaptSyncInterval(context, locationSetting, 0, 0, true);
+                    Log.d(TAG, "Forecast not modified since the last sync, "
+                            + (SystemClock.currentThreadTimeMillis() - cpuStartMillis)
+                            + " ms CPU");
+                    return;
+                }
+                weatherValues = OpenWeatherJsonUtils
+                        .getForecastBatchFromStream(context, weatherResponse.getBody());
+            } finally {
+                weatherResponse.close();
+            }
+            long bytesOnWire = weatherResponse.getBytesOnWire();
+
+            /*
+             * In cases where our JSON contained an error code, getForecastBatchFromStream
              * would have returned null. We need to check for those cases here to prevent any
              * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
              * there isn't any to insert.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
+            if (weatherValues != null && !weatherValues.isEmpty()) {
+                /* The last point to stop: the merge below runs to the end in one transaction */
+                cancellation.throwIfCanceled();
+
+                /* Get a handle on the ContentResolver to merge the data */
                 ContentResolver sunshineContentResolver = context.getContentResolver();
 
-//              If we have valid results, the old data is deleted and the new is inserted
-                /* We delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
+                /*
+                 * Merge the new weather data into Sunshine's ContentProvider. Rather than
+                 * deleting everything and inserting it all again, the provider only updates
+                 * the days that changed, inserts new days and drops the ones that expired, all
+                 * in one transaction.
+                 */
+                Bundle mergeResult = sunshineContentResolver.call(
                         WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+                        WeatherContract.METHOD_MERGE_FORECAST_BATCH,
+                        locationSetting,
+                        weatherValues.toBundle());
 
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+                /* Only now that the forecast is stored may the next request rely on it */
+                SunshinePreferences.saveHttpValidators(context, requestUrl,
+                        weatherResponse.getETag(), weatherResponse.getLastModified());
+                recordSync(context, locationSetting, sourceFingerprint);
+
+                if (mergeResult != null) {
+                    adaptSyncInterval(context, locationSetting,
+                            mergeResult.getDouble(WeatherContract.EXTRA_NEAR_TERM_TEMP_CHANGE),
+                            mergeResult.getInt(WeatherContract.EXTRA_NEAR_TERM_CONDITION_CHANGES),
+                            mergeResult.getInt(WeatherContract.EXTRA_NEAR_TERM_DAYS_COMPARED) > 0);
+                    Log.d(TAG, "Forecast merged: "
+                            + mergeResult.getInt(WeatherContract.EXTRA_ROWS_INSERTED) + " inserted, "
+                            + mergeResult.getInt(WeatherContract.EXTRA_ROWS_UPDATED) + " updated, "
+                            + mergeResult.getInt(WeatherContract.EXTRA_ROWS_DELETED) + " deleted");
+                }
             }
+            Log.d(TAG, "Forecast synced: " + bytesOnWire + " bytes on the wire, "
+                    + (SystemClock.currentThreadTimeMillis() - cpuStartMillis) + " ms CPU");
+
 //            COMPLETED (13) Check if notifications are enabled
             /*
              * Finally, after we insert data into the ContentProvider, determine whether or not
@@ -87,9 +241,96 @@ public class SunshineSyncTask {
             /* If the code reaches this point, we have successfully performed our sync */
 
         } catch (Exception e) {
+            if (cancellation.isCanceled()) {
+                Log.d(TAG, "Sync of " + locationSetting + " canceled");
+                return;
+            }
             /* Server probably invalid */
             e.printStackTrace();
+            Log.w(TAG, "Sync failed, " + NetworkUtils.getTransport());
         }
     }
 
+    /**
+     * @return What the forecast of the location is requested with: the location and the units.
+     * It keys overlapping syncs, and a stored forecast is only reused for the same fingerprint.
+     */
+    static String getSourceFingerprint(Context context, String locationSetting) {
+        return WeatherContract.LocationEntry.canonicalizeLocationSetting(locationSetting)
+                + (SunshinePreferences.isMetric(context) ? "|metric" : "|imperial");
+    }
+
+    /**
+     * Asks the provider what is stored for the location and the freshness policy whether that
+     * still will do.
+     */
+    static SyncFreshnessPolicy.Decision checkFreshness(Context context, String locationSetting,
+                                                       String sourceFingerprint) {
+        Bundle syncState = context.getContentResolver().call(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_SYNC_STATE,
+                locationSetting,
+                null);
+        if (syncState == null) {
+            return SyncFreshnessPolicy.Decision.FETCH_NO_FORECAST;
+        }
+        long ttlMillis = TimeUnit.MINUTES.toMillis(
+                context.getResources().getInteger(R.integer.sync_freshness_ttl_minutes));
+        return new SyncFreshnessPolicy(ttlMillis).decide(
+                syncState.getBoolean(WeatherContract.EXTRA_HAS_FORECAST),
+                syncState.getLong(WeatherContract.EXTRA_LAST_SYNC),
+                syncState.getString(WeatherContract.EXTRA_SOURCE_FINGERPRINT),
+                sourceFingerprint,
+                System.currentTimeMillis());
+    }
+
+    /*
+     * Notes that the server just confirmed the stored forecast of the location as current
+     */
+    private static void recordSync(Context context, String locationSetting,
+                                   String sourceFingerprint) {
+        Bundle syncState = new Bundle();
+        syncState.putLong(WeatherContract.EXTRA_LAST_SYNC, System.currentTimeMillis());
+        syncState.putString(WeatherContract.EXTRA_SOURCE_FINGERPRINT, sourceFingerprint);
+        context.getContentResolver().call(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_RECORD_SYNC,
+                locationSetting,
+                syncState);
+    }
+
+    /*
+     * Moves the periodic sync's interval by how much this sync changed the next 48 hours of the
+     * forecast, and schedules the job again if the interval moved. Only the preferred location,
+     * which the periodic sync is for, has a say.
+     */
+    private static void adaptSyncInterval(Context context, String locationSetting,
+                                          double tempChange, int conditionChanges,
+                                          boolean compared) {
+        String preferredLocation = WeatherContract.LocationEntry.canonicalizeLocationSetting(
+                SunshinePreferences.getPreferredWeatherLocation(context));
+        if (!preferredLocation.equals(
+                WeatherContract.LocationEntry.canonicalizeLocationSetting(locationSetting))) {
+            return;
+        }
+        long intervalSeconds = SunshinePreferences.getSyncIntervalSeconds(
+                context, AdaptiveSyncScheduler.DEFAULT_INTERVAL_SECONDS);
+        long nextIntervalSeconds = AdaptiveSyncScheduler.nextIntervalSeconds(
+                intervalSeconds, tempChange, conditionChanges, compared);
+        if (nextIntervalSeconds != intervalSeconds) {
+            SunshinePreferences.saveSyncIntervalSeconds(context, nextIntervalSeconds);
+            SunshineSyncUtils.scheduleFirerbaseJobDispatcherSync(context);
+            Log.d(TAG, "Periodic sync every " + TimeUnit.SECONDS.toMinutes(nextIntervalSeconds)
+                    + " min now, the next 48 hours changed by up to " + tempChange
+                    + " degrees and " + conditionChanges + " conditions");
+        }
+    }
+
+    /**
+     * @return The number of syncs that found the stored forecast fresh and skipped the network
+     */
+    public static long getFetchesAvoided() {
+        return sFetchesAvoided.get();
+    }
+
 }
\ No newline at end of file
@@ -17,13 +17,10 @@ package com.example.sunshineweatherapp.sync;
 
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
-import android.os.AsyncTask;
 
 import androidx.annotation.NonNull;
 
-import com.example.sunshineweatherapp.data.WeatherContract;
+import com.example.sunshineweatherapp.data.SunshinePreferences;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
@@ -32,16 +29,9 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 
-import java.util.concurrent.TimeUnit;
-
 
 public class SunshineSyncUtils {
 
-//    Adds constant values to sync Sunshine every 3-4 hours
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
-
     private static boolean sInitialized;
 
 //    Adds a sync tag to identify our sync job
@@ -49,6 +39,15 @@ public class SunshineSyncUtils {
 
 //    creates a method to schedule our periodic weather sync
     static void scheduleFirerbaseJobDispatcherSync(@NonNull final Context context){
+        /*
+         * Sunshine syncs every 3 to 4 hours at first. After each sync, AdaptiveSyncScheduler
+         * moves the interval by how fast the weather is changing, and the job is scheduled
+         * again with it.
+         */
+        int syncIntervalSeconds = (int) SunshinePreferences.getSyncIntervalSeconds(
+                context, AdaptiveSyncScheduler.DEFAULT_INTERVAL_SECONDS);
+        int syncFlextimeSeconds = (int) AdaptiveSyncScheduler.flexSeconds(syncIntervalSeconds);
+
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
 
@@ -75,15 +74,16 @@ public class SunshineSyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every interval, give or take the flex
+                 * time: by default every 3 to 4 hours. The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        syncIntervalSeconds,
+                        syncIntervalSeconds + syncFlextimeSeconds))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
@@ -111,57 +111,34 @@ public class SunshineSyncUtils {
         /*
          * We need to check to see if our ContentProvider has data to display in our forecast
          * list. However, performing a query on the main thread is a bad idea as this may
-         * cause our UI to lag. Therefore, we create a thread in which we will run the query
-         * to check the contents of our ContentProvider.
+         * cause our UI to lag. Therefore, we run the query on the sync engine's threads, ahead
+         * of any background sync queued there, as the user is waiting for its outcome.
          */
-        new AsyncTask<Void, Void, Void>() {
+        SyncEngine.getInstance().submit(new Runnable() {
             @Override
-            public Void doInBackground( Void... voids ) {
-
-                /* URI for every row of weather data in our weather table*/
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
+            public void run() {
 
                 /*
-                 * Since this query is going to be used only as a check to see if we have any
-                 * data (rather than to display data), we just need to PROJECT the ID of each
-                 * row. In our queries where we display data, we need to PROJECT more columns
-                 * to determine what weather details need to be displayed.
+                 * One provider call tells whether a forecast from today onwards is stored, with
+                 * an indexed LIMIT 1 query rather than a Cursor filled with every row only to be
+                 * counted, and whether it is still fresh enough to show.
                  */
-                String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
-
-                /* Here, we perform the query to check to see if we have any weather data */
-                Cursor cursor = context.getContentResolver().query(
-                        forecastQueryUri,
-                        projectionColumns,
-                        selectionStatement,
-                        null,
-                        null);
+                String locationSetting = SunshinePreferences.getPreferredWeatherLocation(context);
+                SyncFreshnessPolicy.Decision freshness = SunshineSyncTask.checkFreshness(
+                        context, locationSetting,
+                        SunshineSyncTask.getSourceFingerprint(context, locationSetting));
+
                 /*
-                 * A Cursor object can be null for various different reasons. A few are
-                 * listed below.
-                 *
-                 *   1) Invalid URI
-                 *   2) A certain ContentProvider's query method returns null
-                 *   3) A RemoteException was thrown.
-                 *
-                 * Bottom line, it is generally a good idea to check if a Cursor returned
-                 * from a ContentResolver is null.
-                 *
-                 * If the Cursor was null OR if it was empty, we need to sync immediately to
-                 * be able to display data to the user.
+                 * With no forecast from today onwards (including when the provider could not be
+                 * reached at all), or one fetched too long ago or for other units, we need to
+                 * sync immediately to be able to display data to the user.
                  */
                 //  COMPLETED (6) If it is empty or we have a null Cursor, sync the weather now!
-                if (null == cursor || cursor.getCount() == 0) {
+                if (freshness.shouldFetch()) {
                     startImmediateSync(context);
                 }
-
-                /* Make sure to close the Cursor to avoid memory leaks! */
-                cursor.close();
-                return null;
             }
-        }.execute();
+        }, SyncEngine.PRIORITY_USER);
 
     }
     /**
@@ -0,0 +1,140 @@
+package com.example.sunshineweatherapp.sync;
+
+import com.example.sunshineweatherapp.data.WeatherContract;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs syncs so that two syncs of the same location never overlap, while syncs of different
+ * locations, which touch disjoint rows, run side by side.
+ * <p>
+ * Mutual exclusion is per location through a fixed array of striped locks: a location always
+ * maps to the same stripe, whichever way its setting is spelled, so the number of locks stays bounded however many locations come
+ * and go. Two locations that happen to share a stripe are serialised, which costs throughput
+ * but never correctness.
+ * <p>
+ * Work handed to {@link #submit(Runnable, int)} runs on a bounded pool of named background
+ * threads, which exit when idle so the engine holds no threads between syncs. The pool is the
+ * app's own: sync work never waits behind unrelated AsyncTasks on the process wide serial
+ * executor. Queued work runs by priority, and in submission order within a priority.
+ */
+final class SyncEngine {
+
+    /* Work the user is waiting for, such as the first sync of an empty database */
+    static final int PRIORITY_USER = 0;
+    /* Work nobody is watching, such as the periodic sync */
+    static final int PRIORITY_BACKGROUND = 1;
+
+    private static final int DEFAULT_WORKERS = 3;
+    private static final int DEFAULT_STRIPES = 16;
+
+    private static final class InstanceHolder {
+        static final SyncEngine INSTANCE = new SyncEngine(DEFAULT_WORKERS, DEFAULT_STRIPES);
+    }
+
+    private final ReentrantLock[] mStripes;
+    private final ThreadPoolExecutor mExecutor;
+    private final AtomicLong mSubmitted = new AtomicLong();
+
+    /**
+     * @return The engine all of the app's sync work runs on
+     */
+    static SyncEngine getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @param workers The most syncs that run at once
+     * @param stripes The number of location locks, rounded up to a power of two
+     */
+    SyncEngine(int workers, int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        mStripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            mStripes[i] = new ReentrantLock();
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        mExecutor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SunshineSync-" + threadCount.incrementAndGet());
+                /* Android maps this to THREAD_PRIORITY_BACKGROUND, as AsyncTask's threads use */
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the work on the calling thread once no other sync of the location is running.
+     *
+     * @param location The location setting. Spellings the provider stores under one location,
+     *                 such as "Mountain View" and "mountain view ", share a lock.
+     */
+    void runExclusive(String location, Runnable work) {
+        ReentrantLock lock = stripeFor(location);
+        lock.lock();
+        try {
+            work.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the work on the pool. Work that syncs a location takes its lock with
+     * {@link #runExclusive(String, Runnable)} once on the worker thread.
+     *
+     * @param priority {@link #PRIORITY_USER} or {@link #PRIORITY_BACKGROUND}
+     * @return The work's future. Cancelling it only stops work that has not started: running
+     * work is stopped through its {@link com.example.sunshineweatherapp.utilities.CancellationToken}.
+     */
+    Future<?> submit(Runnable work, int priority) {
+        PrioritizedTask task = new PrioritizedTask(work, priority, mSubmitted.getAndIncrement());
+        mExecutor.execute(task);
+        return task;
+    }
+
+    private static final class PrioritizedTask extends FutureTask<Void>
+            implements Comparable<PrioritizedTask> {
+
+        private final int mPriority;
+        private final long mSequence;
+
+        PrioritizedTask(Runnable work, int priority, long sequence) {
+            super(work, null);
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    /*
+     * Keys the stripe by the canonical location, as the provider keys its rows, and spreads the
+     * hash so that locations differing only in their high bits still land on different stripes
+     */
+    private ReentrantLock stripeFor(String location) {
+        int hash = location == null ? 0
+                : WeatherContract.LocationEntry.canonicalizeLocationSetting(location).hashCode();
+        hash ^= (hash >>> 16);
+        return mStripes[hash & (mStripes.length - 1)];
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.sunshineweatherapp.sync;
+
+/**
+ * Decides whether a sync needs the network, from what is stored for the location: whether a
+ * forecast from today onwards exists, when the server last confirmed it and what it was
+ * requested with.
+ * <p>
+ * A forecast confirmed within the time to live and requested with the same fingerprint is
+ * served as is. Anything else is fetched.
+ */
+final class SyncFreshnessPolicy {
+
+    enum Decision {
+        /* Nothing from today onwards is stored */
+        FETCH_NO_FORECAST(true),
+        /* The location has never been synced, or not since it started recording syncs */
+        FETCH_NEVER_SYNCED(true),
+        /* The stored forecast was requested for another location or units */
+        FETCH_SOURCE_CHANGED(true),
+        /* The stored forecast is older than the time to live */
+        FETCH_STALE(true),
+        /* The stored forecast is recent and matches the request: skip the network */
+        SKIP_FRESH(false);
+
+        private final boolean mFetch;
+
+        Decision(boolean fetch) {
+            mFetch = fetch;
+        }
+
+        boolean shouldFetch() {
+            return mFetch;
+        }
+    }
+
+    private final long mTtlMillis;
+
+    SyncFreshnessPolicy(long ttlMillis) {
+        mTtlMillis = ttlMillis;
+    }
+
+    /**
+     * @param hasForecast       Whether a forecast from today onwards is stored
+     * @param lastSyncMillis    When the location was last synced, or 0 if never
+     * @param storedFingerprint The fingerprint of that sync, or null
+     * @param fingerprint       The fingerprint of the sync about to run
+     * @param nowMillis         The current time, on the same clock as lastSyncMillis
+     */
+    Decision decide(boolean hasForecast, long lastSyncMillis, String storedFingerprint,
+                    String fingerprint, long nowMillis) {
+        if (!hasForecast) {
+            return Decision.FETCH_NO_FORECAST;
+        }
+        if (lastSyncMillis <= 0 || storedFingerprint == null) {
+            return Decision.FETCH_NEVER_SYNCED;
+        }
+        if (!storedFingerprint.equals(fingerprint)) {
+            return Decision.FETCH_SOURCE_CHANGED;
+        }
+        long ageMillis = nowMillis - lastSyncMillis;
+        /* A sync in the future means the clock was set back: trust nothing */
+        if (ageMillis < 0 || ageMillis >= mTtlMillis) {
+            return Decision.FETCH_STALE;
+        }
+        return Decision.SKIP_FRESH;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Lets one thread ask the work running on another to stop. The work checks the token between
+ * steps, and whatever it is blocked on (a connection, a backoff pause) registers a listener so
+ * that a cancel reaches it straight away rather than at the next check.
+ * <p>
+ * A token is cancelled at most once and stays cancelled.
+ */
+public final class CancellationToken {
+
+    /**
+     * A token that is never cancelled, for work nobody can stop.
+     */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    private final boolean mCancellable;
+
+    private boolean mCanceled;
+    private Runnable mOnCancel;
+
+    public CancellationToken() {
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable) {
+        mCancellable = cancellable;
+    }
+
+    /**
+     * Cancels the work and runs the listener, if any, on the calling thread.
+     */
+    public void cancel() {
+        Runnable onCancel;
+        synchronized (this) {
+            if (!mCancellable || mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            onCancel = mOnCancel;
+            mOnCancel = null;
+            notifyAll();
+        }
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * @throws InterruptedIOException If the token has been cancelled. I/O code treats it like
+     *                                any other failed read, which is how a cancel unwinds.
+     */
+    public void throwIfCanceled() throws InterruptedIOException {
+        if (isCanceled()) {
+            throw new InterruptedIOException("Canceled");
+        }
+    }
+
+    /**
+     * Sets what to run on {@link #cancel()}, such as closing a connection a thread is blocked
+     * reading. It runs at once if the token is already cancelled.
+     *
+     * @param onCancel The listener, or null to remove the current one
+     */
+    public void setOnCancelListener(Runnable onCancel) {
+        if (!mCancellable) {
+            /* Shared by all work that cannot be stopped: nothing would ever run it */
+            return;
+        }
+        synchronized (this) {
+            if (!mCanceled) {
+                mOnCancel = onCancel;
+                return;
+            }
+        }
+        if (onCancel != null) {
+            onCancel.run();
+        }
+    }
+
+    /**
+     * Waits for the given time, or less if the token is cancelled meanwhile.
+     *
+     * @return false if the wait ended because the token was cancelled
+     */
+    public synchronized boolean sleep(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while (!mCanceled && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return !mCanceled;
+    }
+}
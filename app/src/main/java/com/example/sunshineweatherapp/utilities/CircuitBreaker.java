@@ -0,0 +1,148 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling a failing server for a while, instead of letting every sync (and every
+ * immediate sync the settings screen asks for) add load to an outage.
+ * <p>
+ * The breaker starts closed and lets calls through. After {@code failureThreshold} failures in
+ * a row it opens and rejects calls for {@code openMillis}. Then it is half-open: a single probe
+ * call is let through, and its outcome either closes the breaker again or reopens it for
+ * another {@code openMillis}. A call that is allowed must report its outcome with
+ * {@link #onSuccess()}, {@link #onFailure()} or {@link #onAbandoned()}.
+ * <p>
+ * All methods are thread safe.
+ */
+public final class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    /**
+     * Source of time for the breaker, replaced by the tests.
+     */
+    interface Clock {
+        long nowMillis();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nowMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+    };
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final Clock mClock;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAtMillis;
+    private boolean mProbeInFlight;
+
+    private long mSuccesses;
+    private long mFailures;
+    private long mRejected;
+    private long mTimesOpened;
+
+    /**
+     * @param failureThreshold Failures in a row that open the breaker
+     * @param openMillis       How long the breaker stays open before letting a probe through
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this(failureThreshold, openMillis, SYSTEM_CLOCK);
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis, Clock clock) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mClock = clock;
+    }
+
+    /**
+     * Asks whether a call may go ahead.
+     *
+     * @return false if the breaker is open, or half-open with its probe already under way
+     */
+    public synchronized boolean allowRequest() {
+        if (mState == State.OPEN && mClock.nowMillis() - mOpenedAtMillis >= mOpenMillis) {
+            mState = State.HALF_OPEN;
+            mProbeInFlight = false;
+        }
+        switch (mState) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (!mProbeInFlight) {
+                    mProbeInFlight = true;
+                    return true;
+                }
+                mRejected++;
+                return false;
+            default:
+                mRejected++;
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        mSuccesses++;
+        mConsecutiveFailures = 0;
+        mProbeInFlight = false;
+        mState = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        mFailures++;
+        mConsecutiveFailures++;
+        mProbeInFlight = false;
+        if (mState == State.HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            if (mState != State.OPEN) {
+                mTimesOpened++;
+            }
+            mState = State.OPEN;
+            mOpenedAtMillis = mClock.nowMillis();
+        }
+    }
+
+    /**
+     * Reports that an allowed call ended without telling anything about the server, such as a
+     * call cancelled by its caller. A half-open breaker lets its next probe through.
+     */
+    public synchronized void onAbandoned() {
+        mProbeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * @return The number of calls turned away while the breaker was open: the load it shed
+     */
+    public synchronized long getRejectedCount() {
+        return mRejected;
+    }
+
+    public synchronized long getSuccessCount() {
+        return mSuccesses;
+    }
+
+    public synchronized long getFailureCount() {
+        return mFailures;
+    }
+
+    public synchronized long getTimesOpened() {
+        return mTimesOpened;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" + mState
+                + ", successes=" + mSuccesses
+                + ", failures=" + mFailures
+                + ", rejected=" + mRejected
+                + ", timesOpened=" + mTimesOpened + "}";
+    }
+}
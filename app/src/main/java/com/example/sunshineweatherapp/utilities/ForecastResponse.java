@@ -0,0 +1,95 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The answer of the weather server to a conditional request, see
+ * {@link NetworkUtils#getConditionalResponseFromHttpUrl(java.net.URL, String, String)}.
+ * <p>
+ * Either the forecast has not changed since the validators sent with the request, and there is
+ * no body, or it has, and the body is open for reading together with the validators to send
+ * next time. A response must always be closed. Closing it does not disconnect: it releases the
+ * connection back to the keep-alive pool, so the next request to the server can reuse it.
+ */
+public final class ForecastResponse implements Closeable {
+
+    private final InputStream mBody;
+    private final HttpBodyUtils.CountingInputStream mWire;
+    private final String mETag;
+    private final String mLastModified;
+
+    private ForecastResponse(InputStream body, HttpBodyUtils.CountingInputStream wire,
+                             String eTag, String lastModified) {
+        mBody = body;
+        mWire = wire;
+        mETag = eTag;
+        mLastModified = lastModified;
+    }
+
+    static ForecastResponse notModified() {
+        return new ForecastResponse(null, null, null, null);
+    }
+
+    /**
+     * @param body The decoded body
+     * @param wire The body as it came off the connection, before decoding
+     */
+    static ForecastResponse modified(InputStream body, HttpBodyUtils.CountingInputStream wire,
+                                     String eTag, String lastModified) {
+        return new ForecastResponse(body, wire, eTag, lastModified);
+    }
+
+    /**
+     * @return This response with its body read through the given stream instead, which must
+     * read from and close the current body
+     */
+    ForecastResponse withBody(InputStream body) {
+        return new ForecastResponse(body, mWire, mETag, mLastModified);
+    }
+
+    /**
+     * @return true if the server answered 304 Not Modified: the forecast already stored is
+     * still current and there is nothing to read
+     */
+    public boolean isNotModified() {
+        return mBody == null;
+    }
+
+    /**
+     * @return The response body, or null if {@link #isNotModified()}
+     */
+    public InputStream getBody() {
+        return mBody;
+    }
+
+    /**
+     * @return The number of body bytes received so far as they came over the wire, that is
+     * still compressed if the server compressed them
+     */
+    public long getBytesOnWire() {
+        return mWire == null ? 0 : mWire.getCount();
+    }
+
+    /**
+     * @return The ETag validator of the body, or null if the server sent none
+     */
+    public String getETag() {
+        return mETag;
+    }
+
+    /**
+     * @return The Last-Modified validator of the body, or null if the server sent none
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mBody != null) {
+            mBody.close();
+        }
+    }
+}
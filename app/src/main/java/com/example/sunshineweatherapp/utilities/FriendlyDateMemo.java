@@ -0,0 +1,117 @@
+package com.example.sunshineweatherapp.utilities;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Remembers the friendly date strings of {@link SunshineDateUtils#getFriendlyDateString} for
+ * the days around today, so the same few forecast days are not formatted again for every row
+ * and every sync. A remembered string is returned as is, without any allocation.
+ * <p>
+ * What a date looks like depends on the day it is today, the time zone and the locale, so the
+ * memo is dropped at the next midnight, local or UTC, whichever comes first, and when the time
+ * zone, the clock or the locale change.
+ */
+final class FriendlyDateMemo {
+
+    /* Dates from yesterday up to a month ahead are remembered, the whole forecast and more */
+    private static final int FIRST_DAY_OFFSET = -1;
+    private static final int DAYS = 32;
+
+    private static volatile FriendlyDateMemo sMemo;
+
+    private static boolean sInvalidatorRegistered;
+
+    /* Days since the epoch of the first date remembered */
+    private final long mFirstDay;
+
+    private final long mValidUntilMillis;
+
+    private final Locale mLocale;
+
+    /*
+     * Indexed by days since mFirstDay. Threads may fill in the same slot at once, which is
+     * harmless: they store equal, immutable Strings.
+     */
+    private final String[] mDates = new String[DAYS];
+    private final String[] mFullDates = new String[DAYS];
+
+    private FriendlyDateMemo(long nowMillis, Locale locale) {
+        long todayUtc = nowMillis / SunshineDateUtils.DAY_IN_MILLIS;
+        mFirstDay = todayUtc + FIRST_DAY_OFFSET;
+
+        /*
+         * The day names are worked out against the UTC day, but users expect "Today" to move
+         * on at their own midnight: start over at whichever comes first.
+         */
+        long nextUtcMidnight = (todayUtc + 1) * SunshineDateUtils.DAY_IN_MILLIS;
+        TimeZone timeZone = TimeZone.getDefault();
+        long localNow = nowMillis + timeZone.getOffset(nowMillis);
+        long nextLocalMidnight = (localNow / SunshineDateUtils.DAY_IN_MILLIS + 1)
+                * SunshineDateUtils.DAY_IN_MILLIS - timeZone.getOffset(nowMillis);
+        mValidUntilMillis = Math.min(nextUtcMidnight, nextLocalMidnight);
+
+        mLocale = locale;
+    }
+
+    static String getFriendlyDateString(Context context, long normalizedUtcMidnight,
+                                        boolean showFullDate) {
+        FriendlyDateMemo memo = sMemo;
+        /* Locale.getDefault() hands back the current default, so comparing it costs nothing */
+        if (memo == null || System.currentTimeMillis() >= memo.mValidUntilMillis
+                || Locale.getDefault() != memo.mLocale) {
+            memo = start(context);
+        }
+
+        long index = normalizedUtcMidnight / SunshineDateUtils.DAY_IN_MILLIS - memo.mFirstDay;
+        if (index < 0 || index >= DAYS
+                || !SunshineDateUtils.isDateNormalized(normalizedUtcMidnight)) {
+            return SunshineDateUtils.formatFriendlyDateString(
+                    context, normalizedUtcMidnight, showFullDate);
+        }
+
+        String[] dates = showFullDate ? memo.mFullDates : memo.mDates;
+        String date = dates[(int) index];
+        if (date == null) {
+            date = SunshineDateUtils.formatFriendlyDateString(
+                    context, normalizedUtcMidnight, showFullDate);
+            dates[(int) index] = date;
+        }
+        return date;
+    }
+
+    /**
+     * Forgets every remembered date, as happens when the time zone, clock or locale change.
+     */
+    static void invalidate() {
+        sMemo = null;
+    }
+
+    private static synchronized FriendlyDateMemo start(Context context) {
+        if (!sInvalidatorRegistered) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            /* Registered for the life of the process, on the application's context */
+            context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    invalidate();
+                }
+            }, filter);
+            sInvalidatorRegistered = true;
+        }
+
+        FriendlyDateMemo memo = new FriendlyDateMemo(System.currentTimeMillis(),
+                Locale.getDefault());
+        sMemo = memo;
+        return memo;
+    }
+}
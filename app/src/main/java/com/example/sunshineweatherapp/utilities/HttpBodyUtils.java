@@ -0,0 +1,119 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads HTTP response bodies for {@link NetworkUtils}: decodes gzip and deflate transfer
+ * compression as a stream and counts the bytes that actually came over the wire.
+ * <p>
+ * Nothing here depends on Android, so it can be exercised by the JVM tests.
+ */
+public final class HttpBodyUtils {
+
+    /* What we ask the server for. Forecast JSON compresses to about a fifth of its size. */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private HttpBodyUtils() {
+    }
+
+    /**
+     * Wraps a raw response body in the decoder its Content-Encoding calls for. The returned
+     * stream inflates as it is read, so the body is never held in memory compressed or whole.
+     *
+     * @param raw             The body as read from the connection
+     * @param contentEncoding The response's Content-Encoding header, or null
+     * @return The decoded body
+     * @throws IOException If the encoding is not one we asked for, or the gzip header is broken
+     */
+    public static InputStream decode(InputStream raw, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return raw;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if (encoding.isEmpty() || encoding.equals("identity")) {
+            return raw;
+        }
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(raw, BUFFER_SIZE);
+        }
+        if (encoding.equals("deflate")) {
+            return inflate(raw);
+        }
+        throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+    }
+
+    /*
+     * "deflate" is meant to be zlib wrapped, but some servers send a raw deflate stream. The
+     * two are told apart by the zlib header: compression method 8 and a checksum that makes
+     * the first two bytes a multiple of 31.
+     */
+    private static InputStream inflate(InputStream raw) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(raw, BUFFER_SIZE);
+        in.mark(2);
+        int cmf = in.read();
+        int flg = in.read();
+        in.reset();
+        boolean zlibWrapped = cmf != -1 && flg != -1
+                && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(in, new Inflater(!zlibWrapped), BUFFER_SIZE);
+    }
+
+    /**
+     * Counts the bytes read through it. Placed between the connection and the decoder, it
+     * tells how many bytes a response took on the wire.
+     */
+    public static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * @return The number of bytes read so far
+         */
+        public long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
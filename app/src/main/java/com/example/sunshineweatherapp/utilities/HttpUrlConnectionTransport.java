@@ -0,0 +1,155 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WeatherTransport} over HttpURLConnection that keeps connections alive.
+ * <p>
+ * HttpURLConnection pools the connections of responses whose body was closed without calling
+ * disconnect(), so this transport only disconnects when a request failed. The next request to
+ * the same host then reuses the socket and skips the TCP and TLS handshakes.
+ * <p>
+ * Every request has a deadline. The connect timeout and read timeout are capped by it, and the
+ * body fails with a SocketTimeoutException once the deadline has passed, so a server that
+ * trickles its answer cannot hold the sync thread indefinitely.
+ * <p>
+ * Cancelling a request disconnects it from the cancelling thread. That closes the socket under
+ * a thread blocked connecting or reading, which then fails at once instead of at its timeout.
+ */
+public final class HttpUrlConnectionTransport implements WeatherTransport {
+
+    /* Upper bound for connecting alone, whatever the request's deadline */
+    private static final long CONNECT_TIMEOUT_MILLIS = 15000;
+
+    @Override
+    public ForecastResponse fetch(URL url, String eTag, String lastModified, long timeoutMillis,
+                                  CancellationToken cancellation) throws IOException {
+        cancellation.throwIfCanceled();
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        cancellation.setOnCancelListener(new Runnable() {
+            @Override
+            public void run() {
+                urlConnection.disconnect();
+            }
+        });
+        try {
+            urlConnection.setConnectTimeout(toTimeout(Math.min(timeoutMillis, CONNECT_TIMEOUT_MILLIS)));
+            urlConnection.setReadTimeout(toTimeout(timeoutMillis));
+
+            /*
+             * Asking for an encoding ourselves turns off HttpURLConnection's transparent gzip,
+             * which lets us see (and count) the compressed bytes.
+             */
+            urlConnection.setRequestProperty("Accept-Encoding", HttpBodyUtils.ACCEPT_ENCODING);
+            if (eTag != null) {
+                urlConnection.setRequestProperty("If-None-Match", eTag);
+            }
+            if (lastModified != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                /* A 304 has no body; closing its empty stream hands the connection back */
+                urlConnection.getInputStream().close();
+                cancellation.setOnCancelListener(null);
+                return ForecastResponse.notModified();
+            }
+
+            HttpBodyUtils.CountingInputStream wire = new HttpBodyUtils.CountingInputStream(
+                    new DeadlineInputStream(urlConnection, deadlineNanos, cancellation));
+            return ForecastResponse.modified(
+                    HttpBodyUtils.decode(wire, urlConnection.getContentEncoding()), wire,
+                    urlConnection.getHeaderField("ETag"),
+                    urlConnection.getHeaderField("Last-Modified"));
+        } catch (IOException e) {
+            cancellation.setOnCancelListener(null);
+            urlConnection.disconnect();
+            throw canceledOr(cancellation, e);
+        }
+    }
+
+    /*
+     * A cancel surfaces as whatever the closed socket threw; report it as the cancel it was
+     */
+    private static IOException canceledOr(CancellationToken cancellation, IOException e) {
+        if (!cancellation.isCanceled() || e instanceof InterruptedIOException) {
+            return e;
+        }
+        InterruptedIOException canceled = new InterruptedIOException("Canceled");
+        canceled.initCause(e);
+        return canceled;
+    }
+
+    private static int toTimeout(long millis) {
+        /* 0 would mean no timeout at all */
+        return (int) Math.max(1, Math.min(millis, Integer.MAX_VALUE));
+    }
+
+    /**
+     * The connection's body, failing every read once the request's deadline has passed or it
+     * was cancelled. A failed, timed out or cancelled body disconnects, so a half read
+     * connection is never reused.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+
+        private final HttpURLConnection mConnection;
+        private final long mDeadlineNanos;
+        private final CancellationToken mCancellation;
+
+        DeadlineInputStream(HttpURLConnection connection, long deadlineNanos,
+                            CancellationToken cancellation) throws IOException {
+            super(connection.getInputStream());
+            mConnection = connection;
+            mDeadlineNanos = deadlineNanos;
+            mCancellation = cancellation;
+        }
+
+        private void checkDeadline() throws IOException {
+            if (mCancellation.isCanceled()) {
+                mConnection.disconnect();
+                throw new InterruptedIOException("Canceled");
+            }
+            if (System.nanoTime() - mDeadlineNanos > 0) {
+                mConnection.disconnect();
+                throw new SocketTimeoutException("Request deadline exceeded");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            /* Once the body is closed the connection may be reused: it is no longer ours to cancel */
+            mCancellation.setOnCancelListener(null);
+            super.close();
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            try {
+                return super.read();
+            } catch (IOException e) {
+                mConnection.disconnect();
+                throw canceledOr(mCancellation, e);
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline();
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                mConnection.disconnect();
+                throw canceledOr(mCancellation, e);
+            }
+        }
+    }
+}
@@ -4,19 +4,25 @@ import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.example.sunshineweatherapp.data.SunshinePreferences;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 public final class NetworkUtils {
 
     private static final String TAG = NetworkUtils.class.getSimpleName();
 
+    /* The longest a request, from connecting to reading the last byte, may take */
+    public static final long REQUEST_TIMEOUT_MILLIS = 30000;
+
+    /* Retries and the circuit breaker live as long as the process, across syncs */
+    private static volatile WeatherTransport sTransport =
+            new ResilientWeatherTransport(new HttpUrlConnectionTransport());
+
     /*
      * Sunshine was originally built to use OpenWeatherMap's API. However, we wanted to provide
      * a way to much more easily test the app and provide more varied weather data. After all, in
@@ -125,7 +131,7 @@ public final class NetworkUtils {
      * @param locationQuery The location that will be queried for.
      * @return The URL to use to query the weather server.
      */
-    private static URL buildUrlWithLocationQuery(String locationQuery) {
+    public static URL buildUrlWithLocationQuery(String locationQuery) {
         Uri weatherQueryUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
@@ -144,29 +150,50 @@ public final class NetworkUtils {
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Installs the transport every request goes through from now on. Tests and benchmarks use
+     * this to swap in a {@link StubWeatherTransport}.
+     */
+    @VisibleForTesting
+    public static void setTransport(WeatherTransport transport) {
+        sTransport = transport;
+    }
+
+    /**
+     * @return The transport requests go through. Its toString() reports the retry and circuit
+     * breaker counters, which is how a sync failure log shows how much load an outage shed.
+     */
+    public static WeatherTransport getTransport() {
+        return sTransport;
+    }
+
+    /**
+     * Requests the forecast only if it changed since the response the validators came from.
+     * The validators are sent as If-None-Match and If-Modified-Since; when the server answers
+     * 304 Not Modified, nothing is downloaded and the returned response has no body.
+     * <p>
+     * The forecast is requested compressed and its body is inflated as it is read. The returned
+     * response must always be closed, so that its connection can be reused.
      *
-     * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response, null if no response
-     * @throws IOException Related to network and stream reading
+     * @param url          The URL to fetch the HTTP response from.
+     * @param eTag         ETag of the last response for this URL, or null
+     * @param lastModified Last-Modified of the last response for this URL, or null
+     * @return The response, with its body open for reading unless it was not modified
+     * @throws IOException Related to network and stream reading, or the request taking longer
+     *                     than {@link #REQUEST_TIMEOUT_MILLIS}
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-        try {
-            InputStream in = urlConnection.getInputStream();
-
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
-
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
-            }
-            scanner.close();
-            return response;
-        } finally {
-            urlConnection.disconnect();
-        }
+    public static ForecastResponse getConditionalResponseFromHttpUrl(
+            URL url, String eTag, String lastModified) throws IOException {
+        return getConditionalResponseFromHttpUrl(url, eTag, lastModified, CancellationToken.NONE);
+    }
+
+    /**
+     * As {@link #getConditionalResponseFromHttpUrl(URL, String, String)}, but the request can be
+     * stopped: cancelling the token closes the connection, so a thread blocked connecting or
+     * reading the body fails straight away with an InterruptedIOException.
+     */
+    public static ForecastResponse getConditionalResponseFromHttpUrl(
+            URL url, String eTag, String lastModified, CancellationToken cancellation)
+            throws IOException {
+        return sTransport.fetch(url, eTag, lastModified, REQUEST_TIMEOUT_MILLIS, cancellation);
     }
 }
@@ -1,15 +1,21 @@
 package com.example.sunshineweatherapp.utilities;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
+import com.example.sunshineweatherapp.data.ForecastBatch;
 import com.example.sunshineweatherapp.data.SunshinePreferences;
-import com.example.sunshineweatherapp.data.WeatherContract;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 
 /**
@@ -47,6 +53,20 @@ public class OpenWeatherJsonUtils {
 
     private static final String OWM_MESSAGE_CODE = "cod";
 
+    /* The values every day must have, as bits of the mask readDayForecast collects */
+    private static final int SEEN_PRESSURE = 1;
+    private static final int SEEN_HUMIDITY = 1 << 1;
+    private static final int SEEN_WIND_SPEED = 1 << 2;
+    private static final int SEEN_WIND_DIRECTION = 1 << 3;
+    private static final int SEEN_WEATHER_ID = 1 << 4;
+    private static final int SEEN_MAX = 1 << 5;
+    private static final int SEEN_MIN = 1 << 6;
+    private static final int SEEN_ALL = (1 << 7) - 1;
+
+    private static final String[] REQUIRED_DAY_VALUES = {OWM_PRESSURE, OWM_HUMIDITY,
+            OWM_WINDSPEED, OWM_WIND_DIRECTION, OWM_WEATHER + "[0]." + OWM_WEATHER_ID,
+            OWM_TEMPERATURE + "." + OWM_MAX, OWM_TEMPERATURE + "." + OWM_MIN};
+
     /**
      * This method parses JSON from a web response and returns an array of Strings
      * describing the weather over various days from the forecast.
@@ -141,51 +161,52 @@ public class OpenWeatherJsonUtils {
     }
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * Parses the forecast JSON held in a String into a {@link ForecastBatch}. This is a thin
+     * wrapper around {@link #getForecastBatchFromReader(Context, Reader)} that is kept for
+     * callers which already hold the whole response in memory.
      *
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return The forecast, one row per day, or null if the server reported an error
      *
-     * @throws JSONException If JSON data cannot be properly parsed
+     * @throws IOException If JSON data cannot be properly parsed
      */
-    public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
-            throws JSONException {
-
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-        /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    /* Location invalid */
-                    return null;
-                default:
-                    /* Server probably down */
-                    return null;
-            }
-        }
-
-        JSONArray jsonWeatherArray = forecastJson.getJSONArray(OWM_LIST);
+    public static ForecastBatch getForecastBatchFromJson(Context context, String forecastJsonStr)
+            throws IOException {
+        return getForecastBatchFromReader(context, new StringReader(forecastJsonStr));
+    }
 
-        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+    /**
+     * Parses the forecast JSON straight off the HTTP response stream. Nothing is buffered
+     * beyond the JsonReader's own window: no String holding the whole body and no
+     * JSONObject tree are ever built, each day's values are appended to the batch's primitive
+     * columns as soon as its object has been read.
+     *
+     * @param context Used to store the city's coordinates in SharedPreferences
+     * @param in      The (UTF-8) body of the HTTP response. The caller owns and closes it.
+     *
+     * @return The forecast, one row per day, or null if the server reported an error
+     *
+     * @throws IOException If the stream could not be read or is not valid forecast JSON
+     */
+    public static ForecastBatch getForecastBatchFromStream(Context context, InputStream in)
+            throws IOException {
+        return getForecastBatchFromReader(context, new InputStreamReader(in, "UTF-8"));
+    }
 
-        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-        double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-        double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+    private static ForecastBatch getForecastBatchFromReader(Context context, Reader source)
+            throws IOException {
 
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        JsonReader reader = new JsonReader(source);
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+        /*
+         * Unlike a JSONObject, a stream gives us the keys in whatever order the server wrote
+         * them, so "cod" may well arrive after "list". We collect the rows as we go and only
+         * hand them out once the whole object has been read and no error code turned up in it.
+         */
+        boolean hasCoordinates = false;
+        double cityLatitude = 0;
+        double cityLongitude = 0;
 
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
@@ -193,72 +214,170 @@ public class OpenWeatherJsonUtils {
          * Since this data is also sent in-order and the first day is always the current day, we're
          * going to take advantage of that to get a nice normalized UTC date for all of our weather.
          */
-//        long now = System.currentTimeMillis();
-//        long normalizedUtcStartDay = SunshineDateUtils.normalizeDate(now);
-
         long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
 
-        for (int i = 0; i < jsonWeatherArray.length(); i++) {
-
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double high;
-            double low;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
-
-            /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
-             */
-            dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * i;
-
-            pressure = dayForecast.getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getInt(OWM_HUMIDITY);
-            windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-            windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+        ForecastBatch forecastBatch = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MESSAGE_CODE.equals(name)) {
+                /* JsonReader.nextInt also accepts the quoted form ("200") some servers send */
+                if (reader.nextInt() != HttpURLConnection.HTTP_OK) {
+                    /*
+                     * Location invalid (404) or server probably down: stop here, rather than
+                     * read on and hand out whatever days the error payload carries, or store
+                     * its coordinates. The caller closes the stream.
+                     */
+                    return null;
+                }
+            } else if (OWM_CITY.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (OWM_COORD.equals(reader.nextName())) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String coordName = reader.nextName();
+                            if (OWM_LATITUDE.equals(coordName)) {
+                                cityLatitude = reader.nextDouble();
+                                hasCoordinates = true;
+                            } else if (OWM_LONGITUDE.equals(coordName)) {
+                                cityLongitude = reader.nextDouble();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_LIST.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                forecastBatch = new ForecastBatch();
+                reader.beginArray();
+                int day = 0;
+                while (reader.hasNext()) {
+                    /*
+                     * We ignore all the datetime values embedded in the JSON and assume that
+                     * the values are returned in-order by day (which is not guaranteed to be correct).
+                     */
+                    long dateTimeMillis = normalizedUtcStartDay + SunshineDateUtils.DAY_IN_MILLIS * day;
+                    readDayForecast(reader, dateTimeMillis, forecastBatch);
+                    day++;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-            /*
-             * Description is in a child array called "weather", which is 1 element long.
-             * That element also contains a weather code.
-             */
-            JSONObject weatherObject =
-                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+        if (forecastBatch == null || !hasCoordinates) {
+            throw new IOException("Forecast JSON is missing its list or city coordinates");
+        }
 
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        forecastBatch.setCoordinates(cityLatitude, cityLongitude);
 
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
+        return forecastBatch;
+    }
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
+    /**
+     * Reads one element of the "list" array and appends it to the batch. The reader must be
+     * positioned right before the day's object and is left right after it.
+     *
+     * @throws IOException If the day lacks any of the values it is stored with. A truncated or
+     *                     malformed day must fail the whole batch, as it did when the JSON was
+     *                     read into a JSONObject, rather than replace a stored day with zeros.
+     */
+    private static void readDayForecast(JsonReader reader, long dateTimeMillis,
+                                        ForecastBatch forecastBatch) throws IOException {
+
+        int seen = 0;
+
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        int weatherId = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                seen |= SEEN_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+                seen |= SEEN_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                seen |= SEEN_WIND_SPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                seen |= SEEN_WIND_DIRECTION;
+            } else if (OWM_WEATHER.equals(name)) {
+                /*
+                 * Description is in a child array called "weather", which is 1 element long.
+                 * That element also contains a weather code.
+                 */
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherId = reader.nextInt();
+                            seen |= SEEN_WEATHER_ID;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                /* Temperatures are sent by Open Weather Map in a child object called "temp". */
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                        seen |= SEEN_MAX;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                        seen |= SEEN_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (seen != SEEN_ALL) {
+            for (int i = 0; i < REQUIRED_DAY_VALUES.length; i++) {
+                if ((seen & (1 << i)) == 0) {
+                    throw new IOException("Forecast day " + forecastBatch.size()
+                            + " has no " + REQUIRED_DAY_VALUES[i]);
+                }
+            }
         }
 
-        return weatherContentValues;
+        forecastBatch.add(dateTimeMillis, weatherId, low, high,
+                humidity, pressure, windSpeed, windDirection);
     }
-}
\ No newline at end of file
+}
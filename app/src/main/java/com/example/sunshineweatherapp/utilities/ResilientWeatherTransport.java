@@ -0,0 +1,269 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps another {@link WeatherTransport} with retries and a {@link CircuitBreaker}.
+ * <p>
+ * A failed request is retried up to {@code maxAttempts} times in all, sleeping between
+ * attempts with decorrelated jitter: each pause is random between the base delay and three
+ * times the previous pause, capped. Spreading the retries out keeps many devices from hitting a
+ * recovering server in lockstep. All attempts share the request's deadline; no attempt starts
+ * once it has run out.
+ * <p>
+ * Every attempt goes through the breaker. While it is open, requests fail straight away with a
+ * {@link CircuitOpenException} and never reach the server.
+ * <p>
+ * A cancelled request is not retried and does not count as a failure of the server.
+ * <p>
+ * A 404 means the location is unknown, not that the server is in trouble: it is neither retried
+ * nor counted against the breaker.
+ * <p>
+ * A response with a body only counts for the server once the caller is done with it: a failed
+ * read of the body counts as a failure, closing it otherwise as a success. By then the caller
+ * holds the response, so a body that fails is not retried here; the next sync asks again.
+ */
+public final class ResilientWeatherTransport implements WeatherTransport {
+
+    /**
+     * Thrown instead of making a request while the circuit breaker is open.
+     */
+    public static final class CircuitOpenException extends IOException {
+        CircuitOpenException() {
+            super("Weather server circuit breaker is open");
+        }
+    }
+
+    /**
+     * How the transport waits between attempts, replaced by the tests.
+     */
+    interface Sleeper {
+        void sleep(long millis, CancellationToken cancellation) throws InterruptedException;
+    }
+
+    /* Pauses end early when the request is cancelled */
+    private static final Sleeper CANCELLABLE_SLEEPER = new Sleeper() {
+        @Override
+        public void sleep(long millis, CancellationToken cancellation)
+                throws InterruptedException {
+            cancellation.sleep(millis);
+        }
+    };
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 8000;
+
+    /* Five failed requests in a row shut the server out for five minutes */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final WeatherTransport mDelegate;
+    private final CircuitBreaker mBreaker;
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Sleeper mSleeper;
+    private final Random mRandom;
+
+    private long mRetries;
+
+    public ResilientWeatherTransport(WeatherTransport delegate) {
+        this(delegate, new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS),
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                CANCELLABLE_SLEEPER, new Random());
+    }
+
+    ResilientWeatherTransport(WeatherTransport delegate, CircuitBreaker breaker,
+                              int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                              Sleeper sleeper, Random random) {
+        mDelegate = delegate;
+        mBreaker = breaker;
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mSleeper = sleeper;
+        mRandom = random;
+    }
+
+    @Override
+    public ForecastResponse fetch(URL url, String eTag, String lastModified, long timeoutMillis,
+                                  CancellationToken cancellation) throws IOException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long delayMillis = mBaseDelayMillis;
+        IOException lastFailure = null;
+
+        for (int attempt = 1; attempt <= mMaxAttempts; attempt++) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis <= 0) {
+                break;
+            }
+            cancellation.throwIfCanceled();
+            if (!mBreaker.allowRequest()) {
+                /* If our own failures just opened it, the real cause is the better report */
+                throw lastFailure != null ? lastFailure : new CircuitOpenException();
+            }
+
+            try {
+                ForecastResponse response =
+                        mDelegate.fetch(url, eTag, lastModified, remainingMillis, cancellation);
+                if (response.isNotModified()) {
+                    mBreaker.onSuccess();
+                    return response;
+                }
+                /* Headers alone do not make a healthy server: the body reports when it is read */
+                return response.withBody(
+                        new BreakerReportingInputStream(response.getBody(), cancellation));
+            } catch (FileNotFoundException e) {
+                /* The server answered, so it is healthy; asking again will not help */
+                mBreaker.onSuccess();
+                throw e;
+            } catch (IOException e) {
+                if (cancellation.isCanceled()) {
+                    /* We hung up, the server did not fail: no retry and nothing to count */
+                    mBreaker.onAbandoned();
+                    throw e;
+                }
+                mBreaker.onFailure();
+                lastFailure = e;
+            } catch (RuntimeException e) {
+                /*
+                 * A bug or the platform's HTTP stack, not the server: nothing to count or
+                 * retry, but the breaker must hear of the call, or a half-open one would wait
+                 * for its probe forever
+                 */
+                mBreaker.onAbandoned();
+                throw e;
+            }
+
+            if (attempt == mMaxAttempts) {
+                break;
+            }
+            delayMillis = nextDelay(delayMillis);
+            long sleepMillis = Math.min(delayMillis,
+                    TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+            if (sleepMillis <= 0) {
+                break;
+            }
+            try {
+                mSleeper.sleep(sleepMillis, cancellation);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            cancellation.throwIfCanceled();
+            synchronized (this) {
+                mRetries++;
+            }
+        }
+
+        if (lastFailure == null) {
+            throw new SocketTimeoutException("Request deadline exceeded before any attempt");
+        }
+        throw lastFailure;
+    }
+
+    /*
+     * Reports the outcome of an attempt to the breaker once its body has been read: a failure
+     * if a read fails, otherwise a success when it is closed. Only the first outcome counts.
+     */
+    private final class BreakerReportingInputStream extends FilterInputStream {
+
+        private final CancellationToken mCancellation;
+        private boolean mReported;
+
+        BreakerReportingInputStream(InputStream body, CancellationToken cancellation) {
+            super(body);
+            mCancellation = cancellation;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                reportFailure();
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            try {
+                return super.read(buffer, offset, count);
+            } catch (IOException e) {
+                reportFailure();
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            try {
+                return super.skip(count);
+            } catch (IOException e) {
+                reportFailure();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (!mReported) {
+                    mReported = true;
+                    mBreaker.onSuccess();
+                }
+            }
+            super.close();
+        }
+
+        private synchronized void reportFailure() {
+            if (mReported) {
+                return;
+            }
+            mReported = true;
+            if (mCancellation.isCanceled()) {
+                /* We hung up, the server did not fail */
+                mBreaker.onAbandoned();
+            } else {
+                mBreaker.onFailure();
+            }
+        }
+    }
+
+    /*
+     * Decorrelated jitter: random between the base delay and three times the previous delay
+     */
+    private long nextDelay(long previousMillis) {
+        long upper = Math.max(mBaseDelayMillis + 1, Math.min(mMaxDelayMillis, previousMillis * 3));
+        long jittered;
+        synchronized (mRandom) {
+            jittered = mBaseDelayMillis + (long) (mRandom.nextDouble() * (upper - mBaseDelayMillis));
+        }
+        return Math.min(mMaxDelayMillis, jittered);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mBreaker;
+    }
+
+    /**
+     * @return The number of attempts made after a first attempt failed
+     */
+    public synchronized long getRetryCount() {
+        return mRetries;
+    }
+
+    @Override
+    public String toString() {
+        return "ResilientWeatherTransport{retries=" + getRetryCount() + ", " + mBreaker + "}";
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link WeatherTransport} that answers every request from memory with the same forecast,
+ * behaving like the weather server otherwise: it sends an ETag and answers 304 Not Modified
+ * when the request's ETag matches. Install it with {@link NetworkUtils#setTransport} to run a
+ * sync without a network.
+ */
+public final class StubWeatherTransport implements WeatherTransport {
+
+    private volatile byte[] mBody;
+    private volatile String mETag;
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mNotModified = new AtomicInteger();
+
+    /**
+     * @param body The forecast JSON to serve, as UTF-8
+     * @param eTag The ETag to serve with it, or null to send none
+     */
+    public StubWeatherTransport(byte[] body, String eTag) {
+        setForecast(body, eTag);
+    }
+
+    /**
+     * Changes the forecast served from now on, as an update upstream would.
+     */
+    public synchronized void setForecast(byte[] body, String eTag) {
+        mBody = body;
+        mETag = eTag;
+    }
+
+    /**
+     * @return The number of requests answered so far
+     */
+    public int getRequestCount() {
+        return mRequests.get();
+    }
+
+    /**
+     * @return The number of requests answered with 304 Not Modified so far
+     */
+    public int getNotModifiedCount() {
+        return mNotModified.get();
+    }
+
+    @Override
+    public ForecastResponse fetch(URL url, String eTag, String lastModified, long timeoutMillis,
+                                  CancellationToken cancellation) throws IOException {
+        cancellation.throwIfCanceled();
+        byte[] body;
+        String currentETag;
+        synchronized (this) {
+            body = mBody;
+            currentETag = mETag;
+        }
+        mRequests.incrementAndGet();
+        if (currentETag != null && currentETag.equals(eTag)) {
+            mNotModified.incrementAndGet();
+            return ForecastResponse.notModified();
+        }
+        HttpBodyUtils.CountingInputStream wire =
+                new HttpBodyUtils.CountingInputStream(new ByteArrayInputStream(body));
+        return ForecastResponse.modified(wire, wire, currentETag, null);
+    }
+}
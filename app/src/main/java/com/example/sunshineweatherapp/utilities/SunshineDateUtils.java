@@ -144,6 +144,24 @@ public final class SunshineDateUtils {
         return isDateNormalized;
     }
 
+    /**
+     * Checks a whole array of dates at once, for the provider's batch inserts. One tight loop
+     * over the primitive array, rather than a call and a boxed value per row.
+     *
+     * @param dates Milliseconds since January 1, 1970 at midnight
+     * @param count The number of dates in the array to check, starting at 0
+     *
+     * @return The index of the first date that is not normalized, or -1 if they all are
+     */
+    public static int indexOfUnnormalizedDate(long[] dates, int count) {
+        for (int i = 0; i < count; i++) {
+            if (dates[i] % DAY_IN_MILLIS != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * This method will return the local time midnight for the provided normalized UTC date.
      *
@@ -184,6 +202,24 @@ public final class SunshineDateUtils {
      * or "Friday"
      */
     public static String getFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
+        /* The days around today are formatted once and then remembered */
+        return FriendlyDateMemo.getFriendlyDateString(context, normalizedUtcMidnight, showFullDate);
+    }
+
+    /**
+     * Forgets the friendly dates remembered so far. The memo notices a change of time zone,
+     * clock or locale through broadcasts of its own; a receiver of those same broadcasts that
+     * formats dates straight away calls this first, since it may hear of the change earlier.
+     */
+    public static void forgetFriendlyDates() {
+        FriendlyDateMemo.invalidate();
+    }
+
+    /**
+     * Formats a date as {@link #getFriendlyDateString(Context, long, boolean)} describes,
+     * without looking in the memo first.
+     */
+    static String formatFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
 
         /*
          * NOTE: localDate should be localDateMidnightMillis and should be straight from the
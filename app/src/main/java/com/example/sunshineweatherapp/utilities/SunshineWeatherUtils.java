@@ -1,7 +1,6 @@
 package com.example.sunshineweatherapp.utilities;
 
 import android.content.Context;
-import android.util.Log;
 
 import com.example.sunshineweatherapp.R;
 import com.example.sunshineweatherapp.data.SunshinePreferences;
@@ -13,8 +12,6 @@ import com.example.sunshineweatherapp.data.SunshinePreferences;
  */
 public final class SunshineWeatherUtils {
 
-    private static final String LOG_TAG = SunshineWeatherUtils.class.getSimpleName();
-
     /**
      * This method will convert a temperature from Celsius to Fahrenheit.
      *
@@ -40,8 +37,23 @@ public final class SunshineWeatherUtils {
      * "21°C"
      */
     public static String formatTemperature(Context context, double temperature) {
+        return formatTemperature(context, temperature, SunshinePreferences.isMetric(context));
+    }
 
-        if (!SunshinePreferences.isMetric(context)) {
+    /**
+     * As {@link #formatTemperature(Context, double)}, for callers formatting many temperatures
+     * at once: they read the units preference a single time and pass it in.
+     *
+     * @param context     Android Context to access resources
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @param isMetric    True to show the temperature in Celsius, false for Fahrenheit
+     *
+     * @return Formatted temperature String in the following form:
+     * "21°C"
+     */
+    public static String formatTemperature(Context context, double temperature, boolean isMetric) {
+
+        if (!isMetric) {
             temperature = celsiusToFahrenheit(temperature);
         }
 
@@ -125,299 +137,50 @@ public final class SunshineWeatherUtils {
      * @param weatherId from OpenWeatherMap API response
      *                  http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
      *
-     * @return String for the weather condition, null if no relation is found.
+     * @return String for the weather condition, or one saying it is unknown if no relation is
+     * found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
-        }
-        return context.getString(stringId);
+        return WeatherConditionCatalog.getInstance(context).getDescription(context, weatherId);
     }
 
     /**
      * Helper method to provide the icon resource id according to the weather condition id returned
-     * by the OpenWeatherMap call.
+     * by the OpenWeatherMap call. This is the same icon as
+     * {@link #getSmallArtResourceIdForWeatherCondition(int)}.
      *
      * @param weatherId from OpenWeatherMap API response
      *
-     * @return resource id for the corresponding icon. -1 if no relation is found.
+     * @return resource id for the corresponding icon. The storm icon if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        /*
-         * Based on weather code data found at:
-         * See http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        return WeatherConditionCatalog.getSmallArtResourceId(weatherId);
     }
 
     /**
      * Helper method to provide the art resource id according to the weather condition id returned
-     * by the OpenWeatherMap call.
+     * by the OpenWeatherMap call. This is the same art as
+     * {@link #getLargeArtResourceIdForWeatherCondition(int)}.
      *
      * @param weatherId from OpenWeatherMap API response
      *
-     * @return resource id for the corresponding icon. -1 if no relation is found.
+     * @return resource id for the corresponding art. The storm art if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        /*
-         * Based on weather code data found at:
-         * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
-        }
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        return WeatherConditionCatalog.getLargeArtResourceId(weatherId);
     }
 
+    /**
+     * Helper method to provide the small art resource ID according to the weather condition ID
+     * returned by the OpenWeatherMap call, used in the list and in notifications.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     *                  See http://openweathermap.org/weather-conditions for a list of all IDs
+     *
+     * @return resource ID for the corresponding icon. The storm icon if no relation is found.
+     */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
-        }
-
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.ic_storm;
+        return WeatherConditionCatalog.getSmallArtResourceId(weatherId);
     }
 
     /**
@@ -432,45 +195,10 @@ public final class SunshineWeatherUtils {
      * @param weatherId from OpenWeatherMap API response
      *                  See http://openweathermap.org/weather-conditions for a list of all IDs
      *
-     * @return resource ID for the corresponding icon. -1 if no relation is found.
+     * @return resource ID for the corresponding icon. The storm art if no relation is found.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
-        }
-
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        return WeatherConditionCatalog.getLargeArtResourceId(weatherId);
     }
 
 }
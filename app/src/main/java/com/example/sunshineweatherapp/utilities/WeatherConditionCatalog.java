@@ -0,0 +1,324 @@
+package com.example.sunshineweatherapp.utilities;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.Log;
+
+import androidx.core.os.ConfigurationCompat;
+
+import com.example.sunshineweatherapp.R;
+
+import java.util.Locale;
+
+/**
+ * Everything Sunshine shows for an OpenWeatherMap condition id, worked out once into arrays
+ * indexed by the id: the description, the small and large art and how severe the weather is.
+ * Looking up a condition is then an array load, and the helpers in {@link SunshineWeatherUtils}
+ * that read from here always agree with one another.
+ * <p>
+ * The art and severities do not depend on anything and are built with the class. The
+ * descriptions are resolved for one locale, and {@link #getInstance(Context)} resolves them
+ * again once the locale changes.
+ * <p>
+ * Based on weather code data found at: http://openweathermap.org/weather-conditions
+ */
+public final class WeatherConditionCatalog {
+
+    private static final String LOG_TAG = WeatherConditionCatalog.class.getSimpleName();
+
+    /* The range of condition ids OpenWeatherMap uses */
+    static final int FIRST_CONDITION_ID = 200;
+    static final int LAST_CONDITION_ID = 962;
+
+    private static final int CONDITION_COUNT = LAST_CONDITION_ID - FIRST_CONDITION_ID + 1;
+
+    /** Clear skies, clouds or wind without anything falling */
+    public static final int SEVERITY_CALM = 0;
+    /** Drizzle, mist or fog */
+    public static final int SEVERITY_MILD = 1;
+    /** Rain or snow */
+    public static final int SEVERITY_ROUGH = 2;
+    /** Storms and extreme weather, and any condition Sunshine does not know */
+    public static final int SEVERITY_SEVERE = 3;
+
+    /* The kinds of weather Sunshine has art for. Every condition falls into one of them. */
+    private static final int KIND_UNKNOWN = 0;
+    private static final int KIND_STORM = 1;
+    private static final int KIND_LIGHT_RAIN = 2;
+    private static final int KIND_RAIN = 3;
+    private static final int KIND_SNOW = 4;
+    private static final int KIND_FOG = 5;
+    private static final int KIND_CLEAR = 6;
+    private static final int KIND_LIGHT_CLOUDS = 7;
+    private static final int KIND_CLOUDS = 8;
+
+    /* Indexed by kind. Unknown weather is shown as a storm, to be on the safe side. */
+    private static final int[] SMALL_ART_BY_KIND = {
+            R.drawable.ic_storm,
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy};
+
+    private static final int[] LARGE_ART_BY_KIND = {
+            R.drawable.art_storm,
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds};
+
+    private static final int[] SEVERITY_BY_KIND = {
+            SEVERITY_SEVERE,
+            SEVERITY_SEVERE,
+            SEVERITY_MILD,
+            SEVERITY_ROUGH,
+            SEVERITY_ROUGH,
+            SEVERITY_MILD,
+            SEVERITY_CALM,
+            SEVERITY_CALM,
+            SEVERITY_CALM};
+
+    /* Conditions with a description of their own, as pairs of condition id and string */
+    private static final int[] DESCRIBED_CONDITIONS = {
+            500, R.string.condition_500,
+            501, R.string.condition_501,
+            502, R.string.condition_502,
+            503, R.string.condition_503,
+            504, R.string.condition_504,
+            511, R.string.condition_511,
+            520, R.string.condition_520,
+            531, R.string.condition_531,
+            600, R.string.condition_600,
+            601, R.string.condition_601,
+            602, R.string.condition_602,
+            611, R.string.condition_611,
+            612, R.string.condition_612,
+            615, R.string.condition_615,
+            616, R.string.condition_616,
+            620, R.string.condition_620,
+            621, R.string.condition_621,
+            622, R.string.condition_622,
+            701, R.string.condition_701,
+            711, R.string.condition_711,
+            721, R.string.condition_721,
+            731, R.string.condition_731,
+            741, R.string.condition_741,
+            751, R.string.condition_751,
+            761, R.string.condition_761,
+            762, R.string.condition_762,
+            771, R.string.condition_771,
+            781, R.string.condition_781,
+            800, R.string.condition_800,
+            801, R.string.condition_801,
+            802, R.string.condition_802,
+            803, R.string.condition_803,
+            804, R.string.condition_804,
+            900, R.string.condition_900,
+            901, R.string.condition_901,
+            902, R.string.condition_902,
+            903, R.string.condition_903,
+            904, R.string.condition_904,
+            905, R.string.condition_905,
+            906, R.string.condition_906,
+            951, R.string.condition_951,
+            952, R.string.condition_952,
+            953, R.string.condition_953,
+            954, R.string.condition_954,
+            955, R.string.condition_955,
+            956, R.string.condition_956,
+            957, R.string.condition_957,
+            958, R.string.condition_958,
+            959, R.string.condition_959,
+            960, R.string.condition_960,
+            961, R.string.condition_961,
+            962, R.string.condition_962};
+
+    /* All indexed by condition id - FIRST_CONDITION_ID */
+    private static final boolean[] KNOWN = new boolean[CONDITION_COUNT];
+    private static final int[] SMALL_ART = new int[CONDITION_COUNT];
+    private static final int[] LARGE_ART = new int[CONDITION_COUNT];
+    private static final int[] SEVERITY = new int[CONDITION_COUNT];
+    /* 0 for conditions without a description, which are described as unknown */
+    private static final int[] DESCRIPTION_RES = new int[CONDITION_COUNT];
+
+    static {
+        for (int i = 0; i < CONDITION_COUNT; i++) {
+            int kind = kindOf(FIRST_CONDITION_ID + i);
+            KNOWN[i] = kind != KIND_UNKNOWN;
+            SMALL_ART[i] = SMALL_ART_BY_KIND[kind];
+            LARGE_ART[i] = LARGE_ART_BY_KIND[kind];
+            SEVERITY[i] = SEVERITY_BY_KIND[kind];
+        }
+        for (int id = 200; id <= 232; id++) {
+            DESCRIPTION_RES[id - FIRST_CONDITION_ID] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            DESCRIPTION_RES[id - FIRST_CONDITION_ID] = R.string.condition_3xx;
+        }
+        for (int i = 0; i < DESCRIBED_CONDITIONS.length; i += 2) {
+            DESCRIPTION_RES[DESCRIBED_CONDITIONS[i] - FIRST_CONDITION_ID] =
+                    DESCRIBED_CONDITIONS[i + 1];
+        }
+    }
+
+    private static volatile WeatherConditionCatalog sInstance;
+
+    private final Locale mLocale;
+
+    /* Indexed by condition id - FIRST_CONDITION_ID, null where there is no description */
+    private final String[] mDescriptions = new String[CONDITION_COUNT];
+
+    private WeatherConditionCatalog(Resources resources, Locale locale) {
+        mLocale = locale;
+        for (int i = 0; i < CONDITION_COUNT; i++) {
+            int stringId = DESCRIPTION_RES[i];
+            if (stringId == 0) {
+                continue;
+            }
+            /* Whole ranges, like the thunderstorms, share one String */
+            mDescriptions[i] = i > 0 && DESCRIPTION_RES[i - 1] == stringId
+                    ? mDescriptions[i - 1]
+                    : resources.getString(stringId);
+        }
+    }
+
+    /**
+     * Returns the catalog for the context's current locale, resolving the descriptions again
+     * if the locale changed since they were last resolved.
+     *
+     * @param context Used to access the resources
+     * @return The catalog
+     */
+    public static WeatherConditionCatalog getInstance(Context context) {
+        Resources resources = context.getResources();
+        Locale locale = ConfigurationCompat.getLocales(resources.getConfiguration()).get(0);
+        if (locale == null) {
+            locale = Locale.getDefault();
+        }
+        WeatherConditionCatalog catalog = sInstance;
+        if (catalog == null || !catalog.mLocale.equals(locale)) {
+            /* Two threads may both build one here, which costs a little and harms nothing */
+            catalog = new WeatherConditionCatalog(resources, locale);
+            sInstance = catalog;
+        }
+        return catalog;
+    }
+
+    /**
+     * @param context   Used to describe conditions Sunshine does not know
+     * @param weatherId from OpenWeatherMap API response
+     * @return The description of the condition, such as "Light Rain"
+     */
+    public String getDescription(Context context, int weatherId) {
+        String description = isInRange(weatherId)
+                ? mDescriptions[weatherId - FIRST_CONDITION_ID]
+                : null;
+        if (description == null) {
+            return context.getString(R.string.condition_unknown, weatherId);
+        }
+        return description;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The resource ID of the small icon for the condition, the storm icon if it is
+     * unknown
+     */
+    public static int getSmallArtResourceId(int weatherId) {
+        if (!isKnown(weatherId)) {
+            Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
+        }
+        return smallArtOf(weatherId);
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The resource ID of the large art for the condition, the storm art if it is
+     * unknown
+     */
+    public static int getLargeArtResourceId(int weatherId) {
+        if (!isKnown(weatherId)) {
+            Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
+        }
+        return largeArtOf(weatherId);
+    }
+
+    /*
+     * The lookups behind the getters above, without the logging, which the JVM tests cannot
+     * run. Conditions in range but unknown already hold the storm art.
+     */
+    static int smallArtOf(int weatherId) {
+        return isInRange(weatherId)
+                ? SMALL_ART[weatherId - FIRST_CONDITION_ID]
+                : R.drawable.ic_storm;
+    }
+
+    static int largeArtOf(int weatherId) {
+        return isInRange(weatherId)
+                ? LARGE_ART[weatherId - FIRST_CONDITION_ID]
+                : R.drawable.art_storm;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return How severe the weather is, from {@link #SEVERITY_CALM} to
+     * {@link #SEVERITY_SEVERE}
+     */
+    public static int getSeverity(int weatherId) {
+        return isInRange(weatherId)
+                ? SEVERITY[weatherId - FIRST_CONDITION_ID]
+                : SEVERITY_SEVERE;
+    }
+
+    private static boolean isInRange(int weatherId) {
+        return weatherId >= FIRST_CONDITION_ID && weatherId <= LAST_CONDITION_ID;
+    }
+
+    static boolean isKnown(int weatherId) {
+        return isInRange(weatherId) && KNOWN[weatherId - FIRST_CONDITION_ID];
+    }
+
+    /*
+     * The kind of weather of a condition id. This only runs while the arrays are built.
+     */
+    private static int kindOf(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return KIND_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return KIND_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return KIND_RAIN;
+        } else if (weatherId == 511) {
+            return KIND_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return KIND_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return KIND_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return KIND_FOG;
+        } else if (weatherId == 771 || weatherId == 781) {
+            return KIND_STORM;
+        } else if (weatherId == 800) {
+            return KIND_CLEAR;
+        } else if (weatherId == 801) {
+            return KIND_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return KIND_CLOUDS;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return KIND_STORM;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return KIND_STORM;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return KIND_CLEAR;
+        }
+        return KIND_UNKNOWN;
+    }
+}
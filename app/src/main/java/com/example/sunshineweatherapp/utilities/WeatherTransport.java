@@ -0,0 +1,27 @@
+package com.example.sunshineweatherapp.utilities;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * How {@link NetworkUtils} talks to the weather server. The app uses
+ * {@link HttpUrlConnectionTransport}; {@link StubWeatherTransport} answers from memory, so the
+ * fetch, parse and store path can be tested and benchmarked without a network.
+ */
+public interface WeatherTransport {
+
+    /**
+     * Fetches a forecast, conditionally if validators are given.
+     *
+     * @param url           The URL to fetch
+     * @param eTag          ETag of the last response for this URL, or null
+     * @param lastModified  Last-Modified of the last response for this URL, or null
+     * @param timeoutMillis Time the whole request, including reading the body, may take
+     * @param cancellation  Cancelling it fails the request, and every later read of the body,
+     *                      with an InterruptedIOException
+     * @return The response, which the caller must close
+     * @throws IOException If the request failed, ran past its deadline or was cancelled
+     */
+    ForecastResponse fetch(URL url, String eTag, String lastModified, long timeoutMillis,
+                           CancellationToken cancellation) throws IOException;
+}
@@ -0,0 +1,215 @@
+package com.example.sunshineweatherapp.data;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the schema and every upgrade step of {@link WeatherDbMigrations} against an in-memory
+ * desktop SQLite, so a migration can be checked without a device.
+ */
+public class WeatherDbMigrationsTest {
+
+    private static final String LOCATION_SETTING = "mountain view, ca 94043";
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    private Connection mMigrated;
+    private Connection mFresh;
+
+    @Before
+    public void openDatabases() throws SQLException {
+        mMigrated = DriverManager.getConnection("jdbc:sqlite::memory:");
+        mFresh = DriverManager.getConnection("jdbc:sqlite::memory:");
+    }
+
+    @After
+    public void closeDatabases() throws SQLException {
+        mMigrated.close();
+        mFresh.close();
+    }
+
+    @Test
+    public void upgradeFromVersion3_keepsCachedRows() throws SQLException {
+        createVersion3Database(mMigrated, 14);
+
+        upgrade(mMigrated, 3, WeatherDbHelper.DATABASE_VERSION);
+
+        assertEquals(14, queryLong(mMigrated,
+                "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME));
+        assertEquals(14, queryLong(mMigrated,
+                "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME
+                        + " JOIN " + WeatherContract.LocationEntry.TABLE_NAME
+                        + " ON " + WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = "
+                        + WeatherContract.LocationEntry.TABLE_NAME + "."
+                        + WeatherContract.LocationEntry._ID
+                        + " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+                        + " = '" + LOCATION_SETTING + "'"));
+        assertEquals(DAY_IN_MILLIS * 13, queryLong(mMigrated,
+                "SELECT MAX(" + WeatherContract.WeatherEntry.COLUMN_DATE + ") FROM "
+                        + WeatherContract.WeatherEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void upgradeFromVersion3_matchesFreshSchema() throws SQLException {
+        createVersion3Database(mMigrated, 1);
+        upgrade(mMigrated, 3, WeatherDbHelper.DATABASE_VERSION);
+
+        execute(mFresh, WeatherDbMigrations.getCreateStatements());
+
+        assertEquals(describeSchema(mFresh), describeSchema(mMigrated));
+    }
+
+    @Test
+    public void upgradeFromVersion3_escapesLocationSetting() throws SQLException {
+        createVersion3Database(mMigrated, 1);
+
+        for (String statement : WeatherDbMigrations.getUpgradeStatements(4, "o'fallon, mo")) {
+            execute(mMigrated, statement);
+        }
+
+        assertEquals(1, queryLong(mMigrated,
+                "SELECT COUNT(*) FROM " + WeatherContract.LocationEntry.TABLE_NAME
+                        + " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+                        + " = 'o''fallon, mo'"));
+    }
+
+    @Test
+    public void upgradeFromVersion4_keepsLocationsAndLeavesThemUnsynced() throws SQLException {
+        createVersion3Database(mMigrated, 14);
+        upgrade(mMigrated, 3, 4);
+        execute(mMigrated, "UPDATE " + WeatherContract.LocationEntry.TABLE_NAME + " SET "
+                + WeatherContract.LocationEntry.COLUMN_COORD_LAT + " = 37.39, "
+                + WeatherContract.LocationEntry.COLUMN_COORD_LONG + " = -122.08");
+
+        upgrade(mMigrated, 4, 5);
+
+        assertEquals(1, queryLong(mMigrated,
+                "SELECT COUNT(*) FROM " + WeatherContract.LocationEntry.TABLE_NAME
+                        + " WHERE " + WeatherContract.LocationEntry.COLUMN_COORD_LAT + " = 37.39"
+                        + " AND " + WeatherContract.LocationEntry.COLUMN_LAST_SYNC + " IS NULL"
+                        + " AND " + WeatherContract.LocationEntry.COLUMN_SOURCE_FINGERPRINT
+                        + " IS NULL"));
+        assertEquals(14, queryLong(mMigrated,
+                "SELECT COUNT(*) FROM " + WeatherContract.WeatherEntry.TABLE_NAME));
+    }
+
+    private static void createVersion3Database(Connection db, int days) throws SQLException {
+        execute(db, WeatherDbMigrations.SQL_CREATE_WEATHER_TABLE_V3);
+        for (int i = 0; i < days; i++) {
+            execute(db, "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES + ") VALUES ("
+                    + (DAY_IN_MILLIS * i) + ", 800, 10, 20, 50, 1000, 5, 90)");
+        }
+    }
+
+    private static void upgrade(Connection db, int fromVersion, int toVersion) throws SQLException {
+        for (int version = fromVersion + 1; version <= toVersion; version++) {
+            execute(db, WeatherDbMigrations.getUpgradeStatements(version, LOCATION_SETTING));
+        }
+    }
+
+    /*
+     * Lists every table's columns (name, type, nullability, default, primary key) and every
+     * index's columns, which is what the provider depends on.
+     */
+    private static List<String> describeSchema(Connection db) throws SQLException {
+        List<String> schema = new ArrayList<>();
+        List<String> tables = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        Statement statement = db.createStatement();
+        try {
+            ResultSet names = statement.executeQuery("SELECT type, name FROM sqlite_master"
+                    + " WHERE name NOT LIKE 'sqlite_%' ORDER BY type, name");
+            while (names.next()) {
+                if ("table".equals(names.getString(1))) {
+                    tables.add(names.getString(2));
+                } else if ("index".equals(names.getString(1))) {
+                    indexes.add(names.getString(2));
+                }
+            }
+            for (String table : tables) {
+                ResultSet columns = statement.executeQuery("PRAGMA table_info(" + table + ")");
+                while (columns.next()) {
+                    schema.add(table + "." + columns.getString("name") + " "
+                            + columns.getString("type") + " notnull=" + columns.getInt("notnull")
+                            + " default=" + columns.getString("dflt_value")
+                            + " pk=" + columns.getInt("pk"));
+                }
+                ResultSet tableIndexes = statement.executeQuery("PRAGMA index_list(" + table + ")");
+                List<String> uniqueIndexes = new ArrayList<>();
+                while (tableIndexes.next()) {
+                    if (tableIndexes.getInt("unique") == 1) {
+                        uniqueIndexes.add(tableIndexes.getString("name"));
+                    }
+                }
+                for (String index : uniqueIndexes) {
+                    schema.add(table + " unique " + describeIndexColumns(db, index));
+                }
+            }
+            for (String index : indexes) {
+                schema.add("index " + index + " " + describeIndexColumns(db, index));
+            }
+        } finally {
+            statement.close();
+        }
+        return schema;
+    }
+
+    private static String describeIndexColumns(Connection db, String index) throws SQLException {
+        StringBuilder columns = new StringBuilder();
+        Statement statement = db.createStatement();
+        try {
+            ResultSet info = statement.executeQuery("PRAGMA index_info(" + index + ")");
+            while (info.next()) {
+                columns.append(info.getString("name")).append(' ');
+            }
+        } finally {
+            statement.close();
+        }
+        return columns.toString().trim();
+    }
+
+    private static void execute(Connection db, List<String> statements) throws SQLException {
+        for (String statement : statements) {
+            execute(db, statement);
+        }
+    }
+
+    private static void execute(Connection db, String sql) throws SQLException {
+        Statement statement = db.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static long queryLong(Connection db, String sql) throws SQLException {
+        Statement statement = db.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(sql);
+            result.next();
+            return result.getLong(1);
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.sunshineweatherapp.sync;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link AdaptiveSyncScheduler} moves the sync interval for stable, moderate and
+ * fast-moving weather, and that it stays within its bounds.
+ */
+public class AdaptiveSyncSchedulerTest {
+
+    private static final long THREE_HOURS = TimeUnit.HOURS.toSeconds(3);
+    private static final long SIX_HOURS = TimeUnit.HOURS.toSeconds(6);
+
+    /* The default of sync_freshness_ttl_minutes */
+    private static final long FRESHNESS_TTL_SECONDS = TimeUnit.MINUTES.toSeconds(60);
+
+    @Test
+    public void stableWeather_lengthensTheInterval() {
+        assertEquals(TimeUnit.MINUTES.toSeconds(270),
+                AdaptiveSyncScheduler.nextIntervalSeconds(THREE_HOURS, 0.5, 0, true));
+    }
+
+    @Test
+    public void conditionFlip_shortensTheInterval() {
+        assertEquals(THREE_HOURS,
+                AdaptiveSyncScheduler.nextIntervalSeconds(SIX_HOURS, 0, 1, true));
+    }
+
+    @Test
+    public void largeTemperatureSwing_shortensTheInterval() {
+        assertEquals(THREE_HOURS, AdaptiveSyncScheduler.nextIntervalSeconds(
+                SIX_HOURS, AdaptiveSyncScheduler.VOLATILE_TEMP_CHANGE, 0, true));
+    }
+
+    @Test
+    public void moderateChange_keepsTheInterval() {
+        assertEquals(THREE_HOURS,
+                AdaptiveSyncScheduler.nextIntervalSeconds(THREE_HOURS, 2.0, 0, true));
+    }
+
+    @Test
+    public void nothingToCompare_keepsTheInterval() {
+        assertEquals(THREE_HOURS,
+                AdaptiveSyncScheduler.nextIntervalSeconds(THREE_HOURS, 0, 0, false));
+    }
+
+    @Test
+    public void interval_staysWithinItsBounds() {
+        long interval = THREE_HOURS;
+        for (int i = 0; i < 10; i++) {
+            interval = AdaptiveSyncScheduler.nextIntervalSeconds(interval, 0, 0, true);
+        }
+        assertEquals(AdaptiveSyncScheduler.MAX_INTERVAL_SECONDS, interval);
+
+        for (int i = 0; i < 10; i++) {
+            interval = AdaptiveSyncScheduler.nextIntervalSeconds(interval, 10, 3, true);
+        }
+        assertEquals(AdaptiveSyncScheduler.MIN_INTERVAL_SECONDS, interval);
+    }
+
+    @Test
+    public void syncsAtTheMinimumInterval_areNeverFresh() {
+        long shortestGap = AdaptiveSyncScheduler.MIN_INTERVAL_SECONDS
+                - AdaptiveSyncScheduler.flexSeconds(AdaptiveSyncScheduler.MIN_INTERVAL_SECONDS);
+        assertTrue(shortestGap > FRESHNESS_TTL_SECONDS);
+    }
+
+    @Test
+    public void flex_isAThirdOfTheInterval() {
+        assertEquals(TimeUnit.HOURS.toSeconds(1), AdaptiveSyncScheduler.flexSeconds(THREE_HOURS));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.sunshineweatherapp.sync;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Fires overlapping calls at {@link SingleFlight} and counts how often the work really runs.
+ */
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    @Test
+    public void overlappingCalls_forOneKey_shareOneRun() throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<>();
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<Integer> fetch = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                started.countDown();
+                release.await();
+                return runs.incrementAndGet();
+            }
+        };
+
+        final AtomicInteger[] results = new AtomicInteger[CALLERS];
+        Thread[] callers = new Thread[CALLERS];
+        for (int i = 0; i < CALLERS; i++) {
+            final AtomicInteger result = results[i] = new AtomicInteger();
+            callers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result.set(flight.execute("Mountain View|metric", fetch));
+                    } catch (Exception e) {
+                        result.set(-1);
+                    }
+                }
+            });
+        }
+
+        callers[0].start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            callers[i].start();
+        }
+        /* Let every other caller reach the flight before the first one lands */
+        while (flight.getJoinedCount() < CALLERS - 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join(5000);
+        }
+
+        assertEquals(1, runs.get());
+        for (AtomicInteger result : results) {
+            assertEquals(1, result.get());
+        }
+        assertEquals(1, flight.getExecutedCount());
+        assertEquals(CALLERS - 1, flight.getJoinedCount());
+    }
+
+    @Test
+    public void differentKeys_runIndependently() throws Exception {
+        final SingleFlight<String, String> flight = new SingleFlight<>();
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flight.execute("Paris|metric", awaitBoth(bothRunning, "Paris"));
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        other.start();
+
+        assertEquals("London", flight.execute("London|metric", awaitBoth(bothRunning, "London")));
+        other.join(5000);
+        assertEquals(2, flight.getExecutedCount());
+        assertEquals(0, flight.getJoinedCount());
+    }
+
+    @Test
+    public void finishedFlight_doesNotCacheItsResult() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        final AtomicInteger runs = new AtomicInteger();
+        Callable<Integer> fetch = new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return runs.incrementAndGet();
+            }
+        };
+        assertEquals(1, (int) flight.execute("Mountain View|metric", fetch));
+        assertEquals(2, (int) flight.execute("Mountain View|metric", fetch));
+    }
+
+    @Test
+    public void failure_reachesTheCallerAndFreesTheKey() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        try {
+            flight.execute("Mountain View|metric", new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    throw new IOException("Server down");
+                }
+            });
+            fail("The work failed");
+        } catch (IOException expected) {
+            assertEquals("Server down", expected.getMessage());
+        }
+        assertEquals(7, (int) flight.execute("Mountain View|metric", new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 7;
+            }
+        }));
+    }
+
+    /*
+     * Work that only finishes once both keys are running at the same time
+     */
+    private static Callable<String> awaitBoth(final CountDownLatch bothRunning, final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                bothRunning.countDown();
+                if (!bothRunning.await(5, TimeUnit.SECONDS)) {
+                    throw new AssertionError("The keys did not run concurrently");
+                }
+                return value;
+            }
+        };
+    }
+}
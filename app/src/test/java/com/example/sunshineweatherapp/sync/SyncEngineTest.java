@@ -0,0 +1,191 @@
+package com.example.sunshineweatherapp.sync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs simulated syncs through {@link SyncEngine}: each one holds its location for a while, as
+ * a fetch and merge would. Checks the exclusion per location and that throughput grows as
+ * locations are added, up to the size of the pool.
+ */
+public class SyncEngineTest {
+
+    private static final int WORKERS = 4;
+    private static final long SYNC_MILLIS = 50;
+
+    private final AtomicInteger mRunning = new AtomicInteger();
+    private final AtomicInteger mMostRunning = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> mRunningPerLocation =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger mOverlapsPerLocation = new AtomicInteger();
+
+    @Test
+    public void sameLocation_neverOverlaps() throws Exception {
+        SyncEngine engine = new SyncEngine(WORKERS, 16);
+        List<Future<?>> syncs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            syncs.add(submitSync(engine, "Mountain View"));
+        }
+        awaitAll(syncs);
+
+        assertEquals(0, mOverlapsPerLocation.get());
+        assertEquals(1, mMostRunning.get());
+    }
+
+    @Test
+    public void spellingsOfOneLocation_neverOverlap() throws Exception {
+        /* Enough stripes that the spellings would rarely share one by chance */
+        SyncEngine engine = new SyncEngine(WORKERS, 1024);
+        List<Future<?>> syncs = new ArrayList<>();
+        for (String spelling : new String[]{"Mountain View", "mountain view ", " MOUNTAIN  VIEW"}) {
+            syncs.add(submitSync(engine, spelling, "Mountain View"));
+        }
+        awaitAll(syncs);
+
+        assertEquals(0, mOverlapsPerLocation.get());
+        assertEquals(1, mMostRunning.get());
+    }
+
+    @Test
+    public void differentLocations_runConcurrentlyWithinThePoolBound() throws Exception {
+        SyncEngine engine = new SyncEngine(WORKERS, 16);
+        long oneLocationMillis = 0;
+        for (int locations = 1; locations <= 2 * WORKERS; locations *= 2) {
+            mMostRunning.set(0);
+            long start = System.nanoTime();
+            List<Future<?>> syncs = new ArrayList<>();
+            for (int i = 0; i < locations; i++) {
+                syncs.add(submitSync(engine, "Location " + i));
+            }
+            awaitAll(syncs);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(mMostRunning.get() <= WORKERS);
+
+            if (locations == 1) {
+                oneLocationMillis = elapsedMillis;
+            } else if (locations == WORKERS) {
+                /* A full pool syncs its locations in well under the time it takes one by one */
+                assertTrue(locations + " locations took " + elapsedMillis + " ms, one took "
+                                + oneLocationMillis + " ms",
+                        elapsedMillis * 2 < locations * Math.max(oneLocationMillis, SYNC_MILLIS));
+            }
+        }
+
+        assertEquals(0, mOverlapsPerLocation.get());
+        /* The last round had more locations than workers: the pool ran full */
+        assertTrue("Only " + mMostRunning.get() + " ran at once", mMostRunning.get() > 1);
+    }
+
+    @Test
+    public void runExclusive_onTheCallingThread_waitsForThePoolsSyncOfTheLocation()
+            throws Exception {
+        SyncEngine engine = new SyncEngine(WORKERS, 16);
+        Future<?> pooled = submitSync(engine, "Mountain View");
+        while (mRunning.get() == 0 && !pooled.isDone()) {
+            Thread.sleep(1);
+        }
+        engine.runExclusive("Mountain View", simulatedSync("Mountain View"));
+        assertTrue(pooled.isDone());
+        assertEquals(0, mOverlapsPerLocation.get());
+    }
+
+    @Test
+    public void queuedWork_runsByPriorityThenInOrder() throws Exception {
+        SyncEngine engine = new SyncEngine(1, 16);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> order = new CopyOnWriteArrayList<>();
+
+        /* Occupy the only worker, so everything below queues up */
+        Future<?> blocker = engine.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, SyncEngine.PRIORITY_BACKGROUND);
+        List<Future<?>> queued = new ArrayList<>();
+        queued.add(engine.submit(record(order, "periodic 1"), SyncEngine.PRIORITY_BACKGROUND));
+        queued.add(engine.submit(record(order, "periodic 2"), SyncEngine.PRIORITY_BACKGROUND));
+        queued.add(engine.submit(record(order, "first run"), SyncEngine.PRIORITY_USER));
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        awaitAll(queued);
+
+        assertEquals(Arrays.asList("first run", "periodic 1", "periodic 2"), order);
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws Exception {
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Runnable record(final List<String> order, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+            }
+        };
+    }
+
+    private Future<?> submitSync(SyncEngine engine, String location) {
+        return submitSync(engine, location, location);
+    }
+
+    /*
+     * Syncs the location as spelled, counting overlaps against the location it stands for
+     */
+    private Future<?> submitSync(final SyncEngine engine, final String spelling,
+                                 final String location) {
+        return engine.submit(new Runnable() {
+            @Override
+            public void run() {
+                engine.runExclusive(spelling, simulatedSync(location));
+            }
+        }, SyncEngine.PRIORITY_BACKGROUND);
+    }
+
+    private Runnable simulatedSync(final String location) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRunningPerLocation.putIfAbsent(location, new AtomicInteger());
+                AtomicInteger runningHere = mRunningPerLocation.get(location);
+                if (runningHere.incrementAndGet() > 1) {
+                    mOverlapsPerLocation.incrementAndGet();
+                }
+                int running = mRunning.incrementAndGet();
+                int most;
+                while (running > (most = mMostRunning.get())
+                        && !mMostRunning.compareAndSet(most, running)) {
+                    /* Retry */
+                }
+                try {
+                    Thread.sleep(SYNC_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    mRunning.decrementAndGet();
+                    runningHere.decrementAndGet();
+                }
+            }
+        };
+    }
+}
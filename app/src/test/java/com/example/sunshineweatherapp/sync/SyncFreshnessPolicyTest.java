@@ -0,0 +1,61 @@
+package com.example.sunshineweatherapp.sync;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks every verdict of {@link SyncFreshnessPolicy}.
+ */
+public class SyncFreshnessPolicyTest {
+
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(60);
+    private static final long NOW = 1560000000000L;
+    private static final String FINGERPRINT = "mountain view, ca 94043|metric";
+
+    private final SyncFreshnessPolicy mPolicy = new SyncFreshnessPolicy(TTL_MILLIS);
+
+    @Test
+    public void recentSyncWithSameFingerprint_skipsTheNetwork() {
+        SyncFreshnessPolicy.Decision decision =
+                mPolicy.decide(true, NOW - TTL_MILLIS + 1, FINGERPRINT, FINGERPRINT, NOW);
+        assertEquals(SyncFreshnessPolicy.Decision.SKIP_FRESH, decision);
+        assertFalse(decision.shouldFetch());
+    }
+
+    @Test
+    public void syncAtTheTtl_isStale() {
+        assertEquals(SyncFreshnessPolicy.Decision.FETCH_STALE,
+                mPolicy.decide(true, NOW - TTL_MILLIS, FINGERPRINT, FINGERPRINT, NOW));
+    }
+
+    @Test
+    public void otherUnits_forceAFetch() {
+        assertEquals(SyncFreshnessPolicy.Decision.FETCH_SOURCE_CHANGED,
+                mPolicy.decide(true, NOW, FINGERPRINT, "mountain view, ca 94043|imperial", NOW));
+    }
+
+    @Test
+    public void noForecast_forcesAFetchHoweverRecent() {
+        assertEquals(SyncFreshnessPolicy.Decision.FETCH_NO_FORECAST,
+                mPolicy.decide(false, NOW, FINGERPRINT, FINGERPRINT, NOW));
+    }
+
+    @Test
+    public void neverSynced_forcesAFetch() {
+        assertEquals(SyncFreshnessPolicy.Decision.FETCH_NEVER_SYNCED,
+                mPolicy.decide(true, 0, null, FINGERPRINT, NOW));
+    }
+
+    @Test
+    public void syncInTheFuture_isStale() {
+        SyncFreshnessPolicy.Decision decision =
+                mPolicy.decide(true, NOW + 1000, FINGERPRINT, FINGERPRINT, NOW);
+        assertEquals(SyncFreshnessPolicy.Decision.FETCH_STALE, decision);
+        assertTrue(decision.shouldFetch());
+    }
+}
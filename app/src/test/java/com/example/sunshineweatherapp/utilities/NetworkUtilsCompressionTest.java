@@ -0,0 +1,154 @@
+package com.example.sunshineweatherapp.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fetches the same forecast from a local stub server as identity, gzip and deflate, and checks
+ * that each decodes to the original and that compression cuts the bytes on the wire.
+ */
+public class NetworkUtilsCompressionTest {
+
+    private static final byte[] FORECAST = buildForecastJson().getBytes();
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        final byte[] gzip = gzip(FORECAST);
+        final byte[] zlib = deflate(FORECAST, false);
+        final byte[] rawDeflate = deflate(FORECAST, true);
+
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/weather", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String variant = exchange.getRequestURI().getQuery();
+                String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                byte[] body = FORECAST;
+                if (accepted != null && accepted.contains("gzip") && "gzip".equals(variant)) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    body = gzip;
+                } else if (accepted != null && accepted.contains("deflate")
+                        && ("deflate".equals(variant) || "rawdeflate".equals(variant))) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+                    body = "deflate".equals(variant) ? zlib : rawDeflate;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/weather?";
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void gzipAndIdentity_decodeToTheSameForecast() throws IOException {
+        long identityBytes = fetchBytesOnWire("identity");
+        long gzipBytes = fetchBytesOnWire("gzip");
+
+        assertEquals(FORECAST.length, identityBytes);
+        assertTrue("gzip should cut the bytes on the wire, got " + gzipBytes + " of "
+                + identityBytes, gzipBytes * 2 < identityBytes);
+    }
+
+    @Test
+    public void deflate_decodesZlibAndRawStreams() throws IOException {
+        assertTrue(fetchBytesOnWire("deflate") * 2 < FORECAST.length);
+        assertTrue(fetchBytesOnWire("rawdeflate") * 2 < FORECAST.length);
+    }
+
+    /*
+     * Returns the bytes the variant took on the wire, after checking it decodes to FORECAST
+     */
+    private long fetchBytesOnWire(String variant) throws IOException {
+        ForecastResponse response =
+                NetworkUtils.getConditionalResponseFromHttpUrl(new URL(mBaseUrl + variant), null, null);
+        try {
+            assertArrayEquals(FORECAST, readFully(response.getBody()));
+        } finally {
+            response.close();
+        }
+        return response.getBytesOnWire();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflaterOutputStream deflate = new DeflaterOutputStream(
+                out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        deflate.write(data);
+        deflate.close();
+        return out.toByteArray();
+    }
+
+    /*
+     * Fourteen days shaped like the weather server's answer
+     */
+    private static String buildForecastJson() {
+        StringBuilder json = new StringBuilder("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\","
+                + "\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},\"country\":\"US\"},"
+                + "\"cod\":\"200\",\"message\":0.0105,\"cnt\":14,\"list\":[");
+        for (int day = 0; day < 14; day++) {
+            if (day > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(1560000000L + day * 86400L)
+                    .append(",\"temp\":{\"day\":").append(18 + day % 5)
+                    .append(",\"min\":").append(10 + day % 3)
+                    .append(",\"max\":").append(24 + day % 4)
+                    .append(",\"night\":12,\"eve\":20,\"morn\":11},\"pressure\":1013.")
+                    .append(day).append(",\"humidity\":").append(60 + day)
+                    .append(",\"weather\":[{\"id\":800,\"main\":\"Clear\","
+                            + "\"description\":\"sky is clear\",\"icon\":\"01d\"}],")
+                    .append("\"speed\":").append(3 + day % 4)
+                    .append(",\"deg\":").append(day * 20).append(",\"clouds\":0}");
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.sunshineweatherapp.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link NetworkUtils#getConditionalResponseFromHttpUrl(URL, String, String)} against a
+ * local stub of the weather server that counts the body bytes it sends.
+ */
+public class NetworkUtilsConditionalFetchTest {
+
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Sat, 01 Jun 2019 12:00:00 GMT";
+
+    private static final byte[] FORECAST = "{\"cod\":\"200\",\"list\":[]}".getBytes();
+
+    private HttpServer mServer;
+    private URL mUrl;
+
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicLong mBytesServed = new AtomicLong();
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/weather", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.incrementAndGet();
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+                if (ETAG.equals(ifNoneMatch) || LAST_MODIFIED.equals(ifModifiedSince)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                /* Counted before sending, so the count is final once the client has read it */
+                mBytesServed.addAndGet(FORECAST.length);
+                exchange.sendResponseHeaders(200, FORECAST.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(FORECAST);
+                body.close();
+            }
+        });
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/weather");
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void firstRequest_downloadsBodyAndValidators() throws IOException {
+        ForecastResponse response = NetworkUtils.getConditionalResponseFromHttpUrl(mUrl, null, null);
+        try {
+            assertFalse(response.isNotModified());
+            assertArrayEquals(FORECAST, readFully(response.getBody()));
+            assertEquals(ETAG, response.getETag());
+            assertEquals(LAST_MODIFIED, response.getLastModified());
+        } finally {
+            response.close();
+        }
+        assertEquals(FORECAST.length, mBytesServed.get());
+    }
+
+    @Test
+    public void matchingETag_isNotModifiedAndDownloadsNothing() throws IOException {
+        ForecastResponse response = NetworkUtils.getConditionalResponseFromHttpUrl(mUrl, ETAG, null);
+        try {
+            assertTrue(response.isNotModified());
+            assertNull(response.getBody());
+        } finally {
+            response.close();
+        }
+        assertEquals(1, mRequests.get());
+        assertEquals(0, mBytesServed.get());
+    }
+
+    @Test
+    public void matchingLastModified_isNotModified() throws IOException {
+        ForecastResponse response =
+                NetworkUtils.getConditionalResponseFromHttpUrl(mUrl, null, LAST_MODIFIED);
+        try {
+            assertTrue(response.isNotModified());
+        } finally {
+            response.close();
+        }
+        assertEquals(0, mBytesServed.get());
+    }
+
+    @Test
+    public void staleValidators_downloadBodyAgain() throws IOException {
+        ForecastResponse response =
+                NetworkUtils.getConditionalResponseFromHttpUrl(mUrl, "\"forecast-v0\"", null);
+        try {
+            assertFalse(response.isNotModified());
+            assertArrayEquals(FORECAST, readFully(response.getBody()));
+        } finally {
+            response.close();
+        }
+        assertEquals(FORECAST.length, mBytesServed.get());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.sunshineweatherapp.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives {@link ResilientWeatherTransport} and its {@link CircuitBreaker} with a scripted
+ * transport, a fake clock and a sleeper that only records its pauses.
+ */
+public class ResilientWeatherTransportTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_DELAY_MILLIS = 100;
+    private static final long MAX_DELAY_MILLIS = 1000;
+    private static final int FAILURE_THRESHOLD = 4;
+    private static final long OPEN_MILLIS = 60000;
+
+    private URL mUrl;
+    private long mNowMillis;
+    private final List<Long> mSleeps = new ArrayList<>();
+
+    /* Each call to the scripted transport fails while this is positive, counting down */
+    private int mFailuresLeft;
+    private int mCalls;
+
+    private CircuitBreaker mBreaker;
+    private ResilientWeatherTransport mTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        mUrl = new URL("http://127.0.0.1/weather");
+        mBreaker = new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MILLIS, new CircuitBreaker.Clock() {
+            @Override
+            public long nowMillis() {
+                return mNowMillis;
+            }
+        });
+        WeatherTransport scripted = new WeatherTransport() {
+            @Override
+            public ForecastResponse fetch(URL url, String eTag, String lastModified,
+                                          long timeoutMillis, CancellationToken cancellation)
+                    throws IOException {
+                mCalls++;
+                if (mFailuresLeft > 0) {
+                    mFailuresLeft--;
+                    throw new IOException("Connection reset");
+                }
+                return ForecastResponse.modified(new ByteArrayInputStream(new byte[0]),
+                        null, null, null);
+            }
+        };
+        mTransport = new ResilientWeatherTransport(scripted, mBreaker, MAX_ATTEMPTS,
+                BASE_DELAY_MILLIS, MAX_DELAY_MILLIS, new ResilientWeatherTransport.Sleeper() {
+            @Override
+            public void sleep(long millis, CancellationToken cancellation) {
+                mSleeps.add(millis);
+            }
+        }, new Random(42));
+    }
+
+    @Test
+    public void transientFailures_areRetriedWithJitteredBackoff() throws IOException {
+        mFailuresLeft = 2;
+        assertFalse(mTransport.fetch(mUrl, null, null, 30000, CancellationToken.NONE).isNotModified());
+
+        assertEquals(3, mCalls);
+        assertEquals(2, mTransport.getRetryCount());
+        assertEquals(2, mSleeps.size());
+        long previous = BASE_DELAY_MILLIS;
+        for (long sleep : mSleeps) {
+            assertTrue("Slept " + sleep, sleep >= BASE_DELAY_MILLIS);
+            assertTrue("Slept " + sleep, sleep <= Math.min(MAX_DELAY_MILLIS, previous * 3));
+            previous = sleep;
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+    }
+
+    @Test
+    public void retriesAreBounded() {
+        mFailuresLeft = Integer.MAX_VALUE;
+        try {
+            mTransport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+            fail("Every attempt failed");
+        } catch (IOException expected) {
+            assertEquals("Connection reset", expected.getMessage());
+        }
+        assertEquals(MAX_ATTEMPTS, mCalls);
+        assertEquals(MAX_ATTEMPTS - 1, mSleeps.size());
+    }
+
+    @Test
+    public void consecutiveFailures_openTheBreakerAndShedLoad() throws IOException {
+        mFailuresLeft = Integer.MAX_VALUE;
+        fetchExpectingFailure();
+        fetchExpectingFailure();
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+        int callsWhenOpened = mCalls;
+        long rejectedWhenOpened = mBreaker.getRejectedCount();
+
+        for (int i = 0; i < 10; i++) {
+            try {
+                mTransport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+                fail("The breaker is open");
+            } catch (ResilientWeatherTransport.CircuitOpenException expected) {
+                /* Turned away without a request */
+            }
+        }
+        assertEquals(callsWhenOpened, mCalls);
+        assertEquals(rejectedWhenOpened + 10, mBreaker.getRejectedCount());
+        assertEquals(1, mBreaker.getTimesOpened());
+    }
+
+    @Test
+    public void halfOpenProbe_closesOnSuccessAndReopensOnFailure() throws IOException {
+        mFailuresLeft = Integer.MAX_VALUE;
+        fetchExpectingFailure();
+        fetchExpectingFailure();
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+
+        /* The probe fails: back to open for another period, after a single request */
+        mNowMillis += OPEN_MILLIS;
+        int callsBeforeProbe = mCalls;
+        fetchExpectingFailure();
+        assertEquals(callsBeforeProbe + 1, mCalls);
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+        assertEquals(2, mBreaker.getTimesOpened());
+
+        /* The server recovers and the next probe closes the breaker */
+        mNowMillis += OPEN_MILLIS;
+        mFailuresLeft = 0;
+        mTransport.fetch(mUrl, null, null, 30000, CancellationToken.NONE).close();
+        assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+    }
+
+    @Test
+    public void response_countsAsSuccessOnlyOnceItsBodyIsRead() throws IOException {
+        ForecastResponse response = mTransport.fetch(mUrl, null, null, 30000,
+                CancellationToken.NONE);
+        assertEquals(0, mBreaker.getSuccessCount());
+
+        assertEquals(-1, response.getBody().read());
+        response.close();
+        assertEquals(1, mBreaker.getSuccessCount());
+        assertEquals(0, mBreaker.getFailureCount());
+    }
+
+    @Test
+    public void failedBodyRead_countsAgainstTheServer() throws IOException {
+        ResilientWeatherTransport transport = new ResilientWeatherTransport(new WeatherTransport() {
+            @Override
+            public ForecastResponse fetch(URL url, String eTag, String lastModified,
+                                          long timeoutMillis, CancellationToken cancellation) {
+                return ForecastResponse.modified(new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                }, null, null, null);
+            }
+        }, mBreaker, MAX_ATTEMPTS, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS,
+                new ResilientWeatherTransport.Sleeper() {
+                    @Override
+                    public void sleep(long millis, CancellationToken cancellation) {
+                        mSleeps.add(millis);
+                    }
+                }, new Random(42));
+
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            ForecastResponse response = transport.fetch(mUrl, null, null, 30000,
+                    CancellationToken.NONE);
+            try {
+                response.getBody().read();
+                fail("The body cannot be read");
+            } catch (IOException expected) {
+                /* Reported to the breaker before it reached us */
+            } finally {
+                response.close();
+            }
+        }
+        assertEquals(FAILURE_THRESHOLD, mBreaker.getFailureCount());
+        assertEquals(0, mBreaker.getSuccessCount());
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+    }
+
+    @Test
+    public void probeThatThrowsUnchecked_doesNotLeaveTheBreakerWaiting() throws IOException {
+        final boolean[] crash = new boolean[1];
+        ResilientWeatherTransport transport = new ResilientWeatherTransport(new WeatherTransport() {
+            @Override
+            public ForecastResponse fetch(URL url, String eTag, String lastModified,
+                                          long timeoutMillis, CancellationToken cancellation)
+                    throws IOException {
+                mCalls++;
+                if (crash[0]) {
+                    throw new SecurityException("Permission denied");
+                }
+                throw new IOException("Connection reset");
+            }
+        }, mBreaker, 1, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS,
+                new ResilientWeatherTransport.Sleeper() {
+                    @Override
+                    public void sleep(long millis, CancellationToken cancellation) {
+                        mSleeps.add(millis);
+                    }
+                }, new Random(42));
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            try {
+                transport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+                fail("Every attempt failed");
+            } catch (IOException expected) {
+                /* Counted by the breaker */
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, mBreaker.getState());
+
+        mNowMillis += OPEN_MILLIS;
+        crash[0] = true;
+        try {
+            transport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+            fail("The probe crashed");
+        } catch (SecurityException expected) {
+            /* Passed straight through */
+        }
+        assertEquals(FAILURE_THRESHOLD, mBreaker.getFailureCount());
+
+        /* The next call still gets to probe the server */
+        int callsBefore = mCalls;
+        try {
+            transport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+            fail("The probe crashed");
+        } catch (SecurityException expected) {
+            /* Reached the server rather than being turned away */
+        }
+        assertEquals(callsBefore + 1, mCalls);
+    }
+
+    @Test
+    public void halfOpen_letsOnlyOneProbeThrough() {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            assertTrue(mBreaker.allowRequest());
+            mBreaker.onFailure();
+        }
+        mNowMillis += OPEN_MILLIS;
+        assertTrue(mBreaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, mBreaker.getState());
+        assertFalse(mBreaker.allowRequest());
+        mBreaker.onSuccess();
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void notFound_isNeitherRetriedNorCountedAgainstTheServer() throws IOException {
+        ResilientWeatherTransport transport = new ResilientWeatherTransport(new WeatherTransport() {
+            @Override
+            public ForecastResponse fetch(URL url, String eTag, String lastModified,
+                                          long timeoutMillis, CancellationToken cancellation)
+                    throws IOException {
+                mCalls++;
+                throw new FileNotFoundException(url.toString());
+            }
+        }, mBreaker, MAX_ATTEMPTS, BASE_DELAY_MILLIS, MAX_DELAY_MILLIS,
+                new ResilientWeatherTransport.Sleeper() {
+                    @Override
+                    public void sleep(long millis, CancellationToken cancellation) {
+                        mSleeps.add(millis);
+                    }
+                }, new Random(42));
+
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            try {
+                transport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+                fail("The location is unknown");
+            } catch (FileNotFoundException expected) {
+                /* Passed straight through */
+            }
+        }
+        assertEquals(FAILURE_THRESHOLD, mCalls);
+        assertTrue(mSleeps.isEmpty());
+        assertEquals(CircuitBreaker.State.CLOSED, mBreaker.getState());
+    }
+
+    @Test
+    public void cancelledRequest_isNotRetriedNorCountedAgainstTheServer() throws IOException {
+        mFailuresLeft = Integer.MAX_VALUE;
+        CancellationToken cancellation = new CancellationToken();
+        cancellation.cancel();
+        try {
+            mTransport.fetch(mUrl, null, null, 30000, cancellation);
+            fail("The request was cancelled");
+        } catch (InterruptedIOException expected) {
+            /* Stopped before the first attempt */
+        }
+        assertEquals(0, mCalls);
+        assertEquals(0, mBreaker.getFailureCount());
+    }
+
+    private void fetchExpectingFailure() {
+        try {
+            mTransport.fetch(mUrl, null, null, 30000, CancellationToken.NONE);
+            fail("Expected the fetch to fail");
+        } catch (IOException expected) {
+            /* Counted by the breaker */
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.sunshineweatherapp.utilities;
+
+import com.example.sunshineweatherapp.R;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks the art and severity {@link WeatherConditionCatalog} precomputes for each kind of
+ * weather, including the edges of its ranges and conditions it does not know.
+ */
+public class WeatherConditionCatalogTest {
+
+    @Test
+    public void thunderstorms_areStorms() {
+        for (int id = 200; id <= 232; id++) {
+            assertArt(id, R.drawable.ic_storm, R.drawable.art_storm);
+            assertEquals(WeatherConditionCatalog.SEVERITY_SEVERE,
+                    WeatherConditionCatalog.getSeverity(id));
+        }
+    }
+
+    @Test
+    public void eachKindOfWeather_hasItsOwnArt() {
+        assertArt(300, R.drawable.ic_light_rain, R.drawable.art_light_rain);
+        assertArt(502, R.drawable.ic_rain, R.drawable.art_rain);
+        assertArt(511, R.drawable.ic_snow, R.drawable.art_snow);
+        assertArt(531, R.drawable.ic_rain, R.drawable.art_rain);
+        assertArt(622, R.drawable.ic_snow, R.drawable.art_snow);
+        assertArt(741, R.drawable.ic_fog, R.drawable.art_fog);
+        assertArt(800, R.drawable.ic_clear, R.drawable.art_clear);
+        assertArt(801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds);
+        assertArt(804, R.drawable.ic_cloudy, R.drawable.art_clouds);
+        assertArt(905, R.drawable.ic_storm, R.drawable.art_storm);
+        assertArt(955, R.drawable.ic_clear, R.drawable.art_clear);
+        assertArt(962, R.drawable.ic_storm, R.drawable.art_storm);
+    }
+
+    @Test
+    public void rangeEdges_followTheirOwnRule() {
+        /* 761 (dust) is still fog, while 771 (squalls) and 781 (tornado) are storms */
+        assertArt(761, R.drawable.ic_fog, R.drawable.art_fog);
+        assertArt(771, R.drawable.ic_storm, R.drawable.art_storm);
+        assertArt(781, R.drawable.ic_storm, R.drawable.art_storm);
+    }
+
+    @Test
+    public void severities_rankTheWeather() {
+        assertEquals(WeatherConditionCatalog.SEVERITY_CALM, WeatherConditionCatalog.getSeverity(800));
+        assertEquals(WeatherConditionCatalog.SEVERITY_MILD, WeatherConditionCatalog.getSeverity(301));
+        assertEquals(WeatherConditionCatalog.SEVERITY_MILD, WeatherConditionCatalog.getSeverity(741));
+        assertEquals(WeatherConditionCatalog.SEVERITY_ROUGH, WeatherConditionCatalog.getSeverity(501));
+        assertEquals(WeatherConditionCatalog.SEVERITY_ROUGH, WeatherConditionCatalog.getSeverity(601));
+        assertEquals(WeatherConditionCatalog.SEVERITY_SEVERE, WeatherConditionCatalog.getSeverity(781));
+    }
+
+    @Test
+    public void unknownConditions_areShownAsStorms() {
+        for (int id : new int[]{-1, 0, 199, 400, 550, 907, 963, 1000}) {
+            assertFalse(WeatherConditionCatalog.isKnown(id));
+            assertArt(id, R.drawable.ic_storm, R.drawable.art_storm);
+            assertEquals(WeatherConditionCatalog.SEVERITY_SEVERE,
+                    WeatherConditionCatalog.getSeverity(id));
+        }
+    }
+
+    /*
+     * Checks the lookups behind getSmallArtResourceId and getLargeArtResourceId, which also log
+     * unknown conditions through android.util.Log
+     */
+    private static void assertArt(int weatherId, int smallArt, int largeArt) {
+        assertEquals("small art of " + weatherId, smallArt,
+                WeatherConditionCatalog.smallArtOf(weatherId));
+        assertEquals("large art of " + weatherId, largeArt,
+                WeatherConditionCatalog.largeArtOf(weatherId));
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.sunshineweatherapp.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks connection reuse and request deadlines of {@link HttpUrlConnectionTransport} against a
+ * local stub server, and that {@link StubWeatherTransport} behaves like the weather server.
+ */
+public class WeatherTransportTest {
+
+    private static final byte[] FORECAST = "{\"cod\":\"200\",\"list\":[]}".getBytes();
+
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    /* The client port of every request, which stays the same while a connection is reused */
+    private final List<Integer> mClientPorts = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/weather", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mClientPorts.add(exchange.getRemoteAddress().getPort());
+                exchange.sendResponseHeaders(200, FORECAST.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(FORECAST);
+                body.close();
+            }
+        });
+        mServer.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, FORECAST.length);
+                OutputStream body = exchange.getResponseBody();
+                try {
+                    /* Trickle the body, one byte every 100 ms */
+                    for (byte b : FORECAST) {
+                        body.write(b);
+                        body.flush();
+                        Thread.sleep(100);
+                    }
+                } catch (InterruptedException | IOException e) {
+                    /* The client gave up */
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void consecutiveRequests_reuseTheConnection() throws IOException {
+        WeatherTransport transport = new HttpUrlConnectionTransport();
+        for (int i = 0; i < 3; i++) {
+            ForecastResponse response = transport.fetch(
+                    new URL(mBaseUrl + "/weather"), null, null, 5000, CancellationToken.NONE);
+            try {
+                assertArrayEquals(FORECAST, readFully(response.getBody()));
+            } finally {
+                response.close();
+            }
+        }
+        assertEquals(3, mClientPorts.size());
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+        assertEquals(mClientPorts.get(0), mClientPorts.get(2));
+    }
+
+    @Test
+    public void slowBody_failsAtTheDeadline() throws IOException {
+        WeatherTransport transport = new HttpUrlConnectionTransport();
+        long start = System.nanoTime();
+        ForecastResponse response = transport.fetch(
+                new URL(mBaseUrl + "/slow"), null, null, 500, CancellationToken.NONE);
+        try {
+            readFully(response.getBody());
+            fail("The body took longer than its deadline");
+        } catch (SocketTimeoutException expected) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Gave up after " + elapsedMillis + " ms", elapsedMillis < 1500);
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void cancel_stopsABlockedBodyReadPromptly() throws IOException {
+        WeatherTransport transport = new HttpUrlConnectionTransport();
+        final CancellationToken cancellation = new CancellationToken();
+        ForecastResponse response =
+                transport.fetch(new URL(mBaseUrl + "/slow"), null, null, 30000, cancellation);
+        new Timer(true).schedule(new TimerTask() {
+            @Override
+            public void run() {
+                cancellation.cancel();
+            }
+        }, 300);
+
+        long start = System.nanoTime();
+        try {
+            readFully(response.getBody());
+            fail("The body was cancelled");
+        } catch (InterruptedIOException expected) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("Stopped after " + elapsedMillis + " ms", elapsedMillis < 1000);
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void stub_answersNotModifiedForItsETag() throws IOException {
+        StubWeatherTransport stub = new StubWeatherTransport(FORECAST, "\"v1\"");
+        URL url = new URL(mBaseUrl + "/weather");
+
+        ForecastResponse first = stub.fetch(url, null, null, 5000, CancellationToken.NONE);
+        try {
+            assertFalse(first.isNotModified());
+            assertArrayEquals(FORECAST, readFully(first.getBody()));
+            assertEquals("\"v1\"", first.getETag());
+            assertEquals(FORECAST.length, first.getBytesOnWire());
+        } finally {
+            first.close();
+        }
+
+        assertTrue(stub.fetch(url, "\"v1\"", null, 5000, CancellationToken.NONE).isNotModified());
+
+        stub.setForecast(FORECAST, "\"v2\"");
+        assertFalse(stub.fetch(url, "\"v1\"", null, 5000, CancellationToken.NONE).isNotModified());
+
+        assertEquals(3, stub.getRequestCount());
+        assertEquals(1, stub.getNotModifiedCount());
+        assertTrue("The stub must not touch the network", mClientPorts.isEmpty());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}